@@ -0,0 +1,144 @@
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Many consumers waiting on one AsyncHybridDeque while a single producer offers elements. Every
+ * consumer takes a fixed number of elements, either by calling takeFirst on its own virtual
+ * thread or as a chain of pollFirstAsync callbacks that needs no thread at all. The time is
+ * measured from the first offer until every consumer is done.
+ *
+ * <p>Virtual threads are looked up reflectively, so this class also builds and runs on a JDK
+ * without them; the virtual-thread variant is then skipped.
+ *
+ * <p>Usage: java AsyncConsumersBenchmark [consumers] [elementsPerConsumer] [rounds]. The defaults
+ * are 100,000 consumers taking 10 elements each and 3 rounds, after one warm-up round.
+ */
+public class AsyncConsumersBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    int consumers = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+    int perConsumer = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+    int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+    ExecutorService virtualThreads = virtualThreadExecutor();
+    if (virtualThreads == null) {
+      System.out.println("Virtual threads are not available, skipping takeFirst");
+    }
+    System.out.printf("%,d consumers, %,d elements each%n", consumers, perConsumer);
+    try {
+      for (int round = 0; round <= rounds; round++) {
+        String label = round == 0 ? "warm-up" : "round " + round;
+        if (virtualThreads != null) {
+          report(label, "virtual takeFirst", consumers, perConsumer,
+              virtualThreads(virtualThreads, consumers, perConsumer));
+        }
+        report(label, "pollFirstAsync", consumers, perConsumer,
+            callbacks(consumers, perConsumer));
+      }
+    } finally {
+      if (virtualThreads != null) {
+        virtualThreads.shutdown();
+      }
+    }
+  }
+
+
+  /**
+   * Return an executor that starts a virtual thread per task, or null if this JDK has none.
+   */
+  private static ExecutorService virtualThreadExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+          .invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return null;
+    }
+  }
+
+
+  private static long[] virtualThreads(ExecutorService executor, int consumers, int perConsumer)
+      throws InterruptedException {
+    AsyncHybridDeque<Integer> deque = new AsyncHybridDeque<>();
+    LongAdder sum = new LongAdder();
+    CountDownLatch started = new CountDownLatch(consumers);
+    CountDownLatch done = new CountDownLatch(consumers);
+    for (int c = 0; c < consumers; c++) {
+      executor.execute(() -> {
+        started.countDown();
+        try {
+          for (int i = 0; i < perConsumer; i++) {
+            sum.add(deque.takeFirst());
+          }
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+        }
+        done.countDown();
+      });
+    }
+    started.await();
+    return produce(deque, consumers, perConsumer, sum, done);
+  }
+
+
+  private static long[] callbacks(int consumers, int perConsumer) throws InterruptedException {
+    AsyncHybridDeque<Integer> deque = new AsyncHybridDeque<>();
+    LongAdder sum = new LongAdder();
+    CountDownLatch done = new CountDownLatch(consumers);
+    for (int c = 0; c < consumers; c++) {
+      consume(deque, perConsumer, sum, done);
+    }
+    return produce(deque, consumers, perConsumer, sum, done);
+  }
+
+
+  /**
+   * Take the given number of elements, registering for the next one only once the previous one
+   * has arrived.
+   */
+  private static void consume(AsyncHybridDeque<Integer> deque, int remaining, LongAdder sum,
+      CountDownLatch done) {
+    deque.pollFirstAsync().thenAccept(e -> {
+      sum.add(e);
+      if (remaining == 1) {
+        done.countDown();
+      } else {
+        consume(deque, remaining - 1, sum, done);
+      }
+    });
+  }
+
+
+  /**
+   * Offer every element, wait for the consumers to finish and return the elapsed nanoseconds and
+   * the largest number of elements that were ever waiting for a consumer.
+   */
+  private static long[] produce(AsyncHybridDeque<Integer> deque, int consumers, int perConsumer,
+      LongAdder sum, CountDownLatch done) throws InterruptedException {
+    long total = (long) consumers * perConsumer;
+    long maxBacklog = 0;
+    long start = System.nanoTime();
+    for (long i = 0; i < total; i++) {
+      deque.offerLast(1);
+      if ((i & 1023) == 0) {
+        maxBacklog = Math.max(maxBacklog, deque.size());
+      }
+    }
+    done.await();
+    long elapsed = System.nanoTime() - start;
+    if (sum.sum() != total) {
+      throw new AssertionError("Consumed " + sum.sum() + " elements, expected " + total);
+    }
+    return new long[] {elapsed, maxBacklog};
+  }
+
+
+  private static void report(String label, String variant, int consumers, int perConsumer,
+      long[] result) {
+    long total = (long) consumers * perConsumer;
+    System.out.printf("%-8s %-18s %8.1f ms  %7.2f M elements/s  max backlog %,d%n", label,
+        variant, result[0] / 1e6, total * 1e3 / result[0], result[1]);
+  }
+
+}
@@ -0,0 +1,333 @@
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread-safe, asynchronous front-end for a HybridDeque. Consumers can ask for the first element as
+ * a CompletableFuture, block on takeFirst, or subscribe through a Flow.Publisher with demand-based
+ * backpressure.
+ *
+ * <p>The state is guarded by a ReentrantLock that is only held for constant-time deque operations,
+ * and waiting is done by parking on CompletableFutures rather than on object monitors, so virtual
+ * threads never pin their carrier thread. Futures are always completed after the lock is released,
+ * so dependent actions never run while holding it.
+ *
+ * <p>Like HybridDeque, this class does not allow null elements.
+ */
+public class AsyncHybridDeque<E> {
+
+  /*
+   * IMPLEMENTATION NOTES ----------------------------------
+   *
+   * Either elements or waiters is empty at any moment (ignoring cancelled waiters). An offer hands
+   * its element straight to the oldest live waiter if there is one, and only stores it otherwise.
+   *
+   * A waiter that is cancelled or times out stays in waiters until it is pruned. Offers prune them
+   * from the head, and every abandoned waiter also counts towards a full pass that drops all of
+   * them once they could make up half the queue, so a live waiter at the head cannot hold back an
+   * unbounded number of dead ones.
+   */
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final HybridDeque<E> elements = new HybridDeque<>();
+  private final HybridDeque<CompletableFuture<E>> waiters = new HybridDeque<>();
+
+  // Waiters completed by someone other than offer since the last full prune.
+  private int abandoned;
+
+
+  /**
+   * Add an element at the end, or hand it to the longest-waiting consumer.
+   *
+   * @param e The element to add
+   * @return true
+   * @throws NullPointerException If e is null
+   */
+  public boolean offerLast(E e) {
+    offer(e, false);
+    return true;
+  }
+
+
+  /**
+   * Add an element at the front, or hand it to the longest-waiting consumer.
+   *
+   * @param e The element to add
+   * @return true
+   * @throws NullPointerException If e is null
+   */
+  public boolean offerFirst(E e) {
+    offer(e, true);
+    return true;
+  }
+
+
+  /**
+   * Remove and return the first element without waiting.
+   *
+   * @return The element, or null if the deque is empty
+   */
+  public E pollFirst() {
+    lock.lock();
+    try {
+      return elements.pollFirst();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+
+  /**
+   * Remove the first element, or wait for one to be offered. Waiting consumers are served in the
+   * order they called this method. Cancelling the returned future gives up the place in line
+   * without losing any element.
+   *
+   * @return A future that completes with the removed element
+   */
+  public CompletableFuture<E> pollFirstAsync() {
+    lock.lock();
+    try {
+      E e = elements.pollFirst();
+      if (e != null) {
+        return CompletableFuture.completedFuture(e);
+      }
+
+      while (waiters.size() > 0 && waiters.peekFirst().isDone()) {
+        waiters.pollFirst();
+      }
+      CompletableFuture<E> waiter = new CompletableFuture<>();
+      waiters.offerLast(waiter);
+      waiter.whenComplete((result, ex) -> {
+        if (ex != null) { // Cancelled or timed out rather than handed an element
+          abandon();
+        }
+      });
+      return waiter;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+
+  /**
+   * Remove the first element, waiting for one if necessary. The wait parks the calling thread
+   * without holding a monitor.
+   *
+   * @return The removed element
+   * @throws InterruptedException If interrupted while waiting; no element is lost
+   */
+  public E takeFirst() throws InterruptedException {
+    CompletableFuture<E> waiter = pollFirstAsync();
+    try {
+      return waiter.get();
+    } catch (InterruptedException ie) {
+      if (!waiter.cancel(false)) { // An element arrived anyway, so put it back
+        offerFirst(waiter.join());
+      }
+      throw ie;
+    } catch (ExecutionException ee) { // Waiters are only ever completed normally
+      throw new IllegalStateException(ee.getCause());
+    }
+  }
+
+
+  /**
+   * Return the number of stored elements.
+   */
+  public int size() {
+    lock.lock();
+    try {
+      return elements.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+
+  /**
+   * Return a publisher that removes elements from this deque as its subscribers request them.
+   * Subscribers compete for elements: each element is delivered to exactly one of them. The
+   * publisher never completes, since more elements may always be offered.
+   */
+  public Flow.Publisher<E> publisher() {
+    return subscriber -> {
+      Objects.requireNonNull(subscriber);
+      subscriber.onSubscribe(new DequeSubscription(subscriber));
+    };
+  }
+
+
+  /**
+   * Return the number of queued waiters, including abandoned ones that have not been pruned yet.
+   */
+  int waiting() {
+    lock.lock();
+    try {
+      return waiters.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+
+  /**
+   * Count an abandoned waiter, and drop every completed waiter once they may be half the queue.
+   */
+  private void abandon() {
+    lock.lock();
+    try {
+      abandoned++;
+      if (abandoned > waiters.size() / 2) {
+        for (int i = waiters.size(); i > 0; i--) {
+          CompletableFuture<E> waiter = waiters.pollFirst();
+          if (!waiter.isDone()) {
+            waiters.offerLast(waiter);
+          }
+        }
+        abandoned = 0;
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+
+  private void offer(E e, boolean first) {
+    if (e == null) {
+      throw new NullPointerException();
+    }
+
+    while (true) {
+      CompletableFuture<E> waiter;
+      lock.lock();
+      try {
+        waiter = waiters.pollFirst();
+        while (waiter != null && waiter.isDone()) {
+          waiter = waiters.pollFirst();
+        }
+        if (waiter == null) {
+          if (first) {
+            elements.offerFirst(e);
+          } else {
+            elements.offerLast(e);
+          }
+          return;
+        }
+      } finally {
+        lock.unlock();
+      }
+
+      if (waiter.complete(e)) {
+        return;
+      }
+      // The waiter was cancelled after we took it, so try the next one.
+    }
+  }
+
+
+  /**
+   * Delivers elements to one subscriber. All signalling happens inside drain, which is serialized
+   * by the work-in-progress counter, so onNext is never called concurrently.
+   */
+  private final class DequeSubscription implements Flow.Subscription {
+    private final Flow.Subscriber<? super E> subscriber;
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicInteger wip = new AtomicInteger();
+    private volatile boolean cancelled;
+    private volatile Throwable error;
+    private CompletableFuture<E> pending;
+
+    private DequeSubscription(Flow.Subscriber<? super E> subscriber) {
+      this.subscriber = subscriber;
+    }
+
+    /**
+     * Add demand. Requests after cancellation are ignored, and a non-positive request cancels the
+     * subscription and is reported to the subscriber from drain, like every other signal.
+     */
+    @Override
+    public void request(long n) {
+      if (cancelled) {
+        return;
+      }
+      if (n <= 0) {
+        error = new IllegalArgumentException("Non-positive request: " + n);
+        cancel();
+        return;
+      }
+      demand.getAndAccumulate(n, (current, add) -> {
+        long sum = current + add;
+        return sum < 0 ? Long.MAX_VALUE : sum;
+      });
+      drain();
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+      drain();
+    }
+
+    private void drain() {
+      if (wip.getAndIncrement() != 0) {
+        return;
+      }
+
+      int missed = 1;
+      do {
+        if (cancelled) {
+          releasePending();
+          Throwable failure = error;
+          if (failure != null) {
+            error = null;
+            subscriber.onError(failure);
+          }
+        }
+
+        while (!cancelled && demand.get() > 0) {
+          CompletableFuture<E> waiter = pending;
+          if (waiter == null) {
+            waiter = pollFirstAsync();
+          } else if (!waiter.isDone()) {
+            break;
+          }
+
+          if (!waiter.isDone()) {
+            pending = waiter;
+            waiter.whenComplete((e, ex) -> drain());
+            break;
+          }
+          pending = null;
+
+          if (demand.get() != Long.MAX_VALUE) {
+            demand.decrementAndGet();
+          }
+          subscriber.onNext(waiter.join());
+        }
+
+        missed = wip.addAndGet(-missed);
+      } while (missed != 0);
+    }
+
+    /**
+     * Give up the outstanding request, returning its element to the deque if it already arrived.
+     */
+    private void releasePending() {
+      CompletableFuture<E> waiter = pending;
+      pending = null;
+      if (waiter != null && !waiter.cancel(false)) {
+        offerFirst(waiter.join());
+      }
+    }
+  }
+
+}
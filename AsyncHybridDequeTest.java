@@ -0,0 +1,190 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class AsyncHybridDequeTest {
+
+  /**
+   * Records everything it receives and requests more only when told to.
+   */
+  private static class RecordingSubscriber implements Flow.Subscriber<Integer> {
+    private final List<Integer> received = new ArrayList<>();
+    private Flow.Subscription subscription;
+    private Throwable error;
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      this.subscription = subscription;
+    }
+
+    @Override
+    public void onNext(Integer item) {
+      received.add(item);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      error = throwable;
+    }
+
+    @Override
+    public void onComplete() {}
+  }
+
+  @Test
+  void testPollFirstAsyncAlreadyAvailable() {
+    AsyncHybridDeque<Integer> deque = new AsyncHybridDeque<>();
+    deque.offerLast(1);
+    deque.offerFirst(0);
+    assertEquals(2, deque.size());
+    assertEquals(0, deque.pollFirstAsync().join());
+    assertEquals(1, deque.pollFirst());
+    assertNull(deque.pollFirst());
+    assertThrows(NullPointerException.class, () -> {
+      deque.offerLast(null);
+    });
+  }
+
+  @Test
+  void testPollFirstAsyncWaits() {
+    AsyncHybridDeque<Integer> deque = new AsyncHybridDeque<>();
+    CompletableFuture<Integer> first = deque.pollFirstAsync();
+    CompletableFuture<Integer> second = deque.pollFirstAsync();
+    assertFalse(first.isDone());
+
+    deque.offerLast(1);
+    assertEquals(1, first.join());
+    assertFalse(second.isDone());
+    assertTrue(deque.isEmpty());
+
+    deque.offerFirst(2);
+    assertEquals(2, second.join());
+  }
+
+  @Test
+  void testCancelledWaiterIsSkipped() {
+    AsyncHybridDeque<Integer> deque = new AsyncHybridDeque<>();
+    CompletableFuture<Integer> cancelled = deque.pollFirstAsync();
+    CompletableFuture<Integer> live = deque.pollFirstAsync();
+    cancelled.cancel(false);
+
+    deque.offerLast(1);
+    assertEquals(1, live.join());
+
+    deque.offerLast(2);
+    assertEquals(1, deque.size());
+    assertEquals(2, deque.pollFirst());
+  }
+
+  @Test
+  void testAbandonedWaitersArePruned() {
+    AsyncHybridDeque<Integer> deque = new AsyncHybridDeque<>();
+    CompletableFuture<Integer> head = deque.pollFirstAsync();
+    for (int i = 0; i < 1000; i++) {
+      deque.pollFirstAsync().cancel(false);
+      deque.pollFirstAsync().completeExceptionally(new RuntimeException());
+    }
+    assertTrue(deque.waiting() < 10);
+
+    deque.offerLast(1);
+    assertEquals(1, head.join());
+    assertEquals(0, deque.waiting());
+  }
+
+  @Test
+  void testTakeFirst() throws Exception {
+    AsyncHybridDeque<Integer> deque = new AsyncHybridDeque<>();
+    CompletableFuture<Integer> taken = new CompletableFuture<>();
+    Thread consumer = new Thread(() -> {
+      try {
+        taken.complete(deque.takeFirst());
+      } catch (InterruptedException e) {
+        taken.completeExceptionally(e);
+      }
+    });
+    consumer.start();
+
+    deque.offerLast(7);
+    assertEquals(7, taken.get(10, TimeUnit.SECONDS));
+    consumer.join();
+  }
+
+  @Test
+  void testTakeFirstInterrupted() throws Exception {
+    AsyncHybridDeque<Integer> deque = new AsyncHybridDeque<>();
+    Thread.currentThread().interrupt();
+    assertThrows(InterruptedException.class, () -> {
+      deque.takeFirst();
+    });
+
+    deque.offerLast(3);
+    assertEquals(1, deque.size());
+  }
+
+  @Test
+  void testPublisherRespectsDemand() {
+    AsyncHybridDeque<Integer> deque = new AsyncHybridDeque<>();
+    for (int i = 0; i < 5; i++) {
+      deque.offerLast(i);
+    }
+
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    deque.publisher().subscribe(subscriber);
+    assertTrue(subscriber.received.isEmpty());
+
+    subscriber.subscription.request(2);
+    assertEquals(List.of(0, 1), subscriber.received);
+    assertEquals(3, deque.size());
+
+    subscriber.subscription.request(5);
+    assertEquals(List.of(0, 1, 2, 3, 4), subscriber.received);
+
+    // Two requests are still outstanding and are filled as elements arrive.
+    deque.offerLast(5);
+    deque.offerLast(6);
+    deque.offerLast(7);
+    assertEquals(List.of(0, 1, 2, 3, 4, 5, 6), subscriber.received);
+    assertEquals(1, deque.size());
+  }
+
+  @Test
+  void testPublisherCancel() {
+    AsyncHybridDeque<Integer> deque = new AsyncHybridDeque<>();
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    deque.publisher().subscribe(subscriber);
+    subscriber.subscription.request(1);
+    subscriber.subscription.cancel();
+
+    deque.offerLast(1);
+    assertTrue(subscriber.received.isEmpty());
+    assertEquals(1, deque.pollFirst());
+
+    // Requests after cancellation are ignored, even invalid ones.
+    subscriber.subscription.request(0);
+    assertNull(subscriber.error);
+  }
+
+  @Test
+  void testPublisherNonPositiveRequest() {
+    AsyncHybridDeque<Integer> deque = new AsyncHybridDeque<>();
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    deque.publisher().subscribe(subscriber);
+    subscriber.subscription.request(1);
+
+    subscriber.subscription.request(-1);
+    assertTrue(subscriber.error instanceof IllegalArgumentException);
+
+    // The outstanding request was released along with the subscription.
+    deque.offerLast(1);
+    assertTrue(subscriber.received.isEmpty());
+    assertEquals(1, deque.pollFirst());
+  }
+}
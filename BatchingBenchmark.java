@@ -0,0 +1,111 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Aggregate ingest throughput of BatchingDeque at 1 to 64 producer threads, against every thread
+ * calling offerLast on one HybridDeque under a shared lock. Each run offers the same total number
+ * of elements, split evenly across the threads, and ends when every producer has closed and all
+ * elements are in the deque.
+ *
+ * <p>Usage: java BatchingBenchmark [elements] [rounds]. The defaults are 10,000,000 elements and 3
+ * rounds, after one warm-up round.
+ */
+public class BatchingBenchmark {
+
+  private static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16, 32, 64};
+
+
+  /**
+   * What one producer thread does with its share of the elements.
+   */
+  private interface Ingest {
+    void run(int count);
+  }
+
+
+  public static void main(String[] args) throws InterruptedException {
+    int elements = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+    int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+    System.out.printf("%,d elements, block size %d%n", elements, HybridDeque.blockSize());
+    for (int round = 0; round <= rounds; round++) {
+      String label = round == 0 ? "warm-up" : "round " + round;
+      for (int threads : THREAD_COUNTS) {
+        int perThread = elements / threads;
+
+        try (BatchingDeque<Integer> batching = new BatchingDeque<>(10, TimeUnit.MILLISECONDS)) {
+          long nanos = run(threads, count -> {
+            try (BatchingDeque<Integer>.Producer producer = batching.producer()) {
+              for (int i = 0; i < count; i++) {
+                producer.offer(i & 1023);
+              }
+            }
+          }, perThread);
+          check(batching.size(), threads * perThread);
+          report(label, threads, "BatchingDeque", threads * perThread, nanos);
+        }
+
+        HybridDeque<Integer> shared = new HybridDeque<>();
+        ReentrantLock lock = new ReentrantLock();
+        long nanos = run(threads, count -> {
+          for (int i = 0; i < count; i++) {
+            lock.lock();
+            try {
+              shared.offerLast(i & 1023);
+            } finally {
+              lock.unlock();
+            }
+          }
+        }, perThread);
+        check(shared.size(), threads * perThread);
+        report(label, threads, "locked offerLast", threads * perThread, nanos);
+      }
+    }
+  }
+
+
+  /**
+   * Start the producer threads together and return the nanoseconds until the last one is done.
+   */
+  private static long run(int threads, Ingest ingest, int perThread) throws InterruptedException {
+    CountDownLatch start = new CountDownLatch(1);
+    List<Thread> producers = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      Thread thread = new Thread(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException ie) {
+          return;
+        }
+        ingest.run(perThread);
+      }, "BatchingBenchmark-producer");
+      producers.add(thread);
+      thread.start();
+    }
+
+    long begin = System.nanoTime();
+    start.countDown();
+    for (Thread thread : producers) {
+      thread.join();
+    }
+    return System.nanoTime() - begin;
+  }
+
+
+  private static void check(int size, int expected) {
+    if (size != expected) {
+      throw new AssertionError("Deque holds " + size + " elements, expected " + expected);
+    }
+  }
+
+
+  private static void report(String label, int threads, String variant, int elements,
+      long nanos) {
+    System.out.printf("%-8s %2d threads  %-16s %7.1f M elements/s%n", label, threads, variant,
+        elements * 1e3 / nanos);
+  }
+
+}
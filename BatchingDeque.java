@@ -0,0 +1,265 @@
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread-safe FIFO queue for many producer threads. Instead of taking a shared lock for every
+ * element, each producer thread gets its own Producer handle that collects elements in a private,
+ * block-sized buffer. A full buffer is published to the shared HybridDeque under one short lock
+ * hold, and becomes the deque's next block by a single link.
+ *
+ * <p>Latency stays bounded: a background thread flushes any buffer whose oldest element has waited
+ * for the maximum delay, and closing a producer flushes what it still holds. Elements from one
+ * producer are consumed in the order that producer offered them; elements of different producers
+ * are interleaved a buffer at a time.
+ *
+ * <p>Like HybridDeque, this class does not allow null elements.
+ */
+public class BatchingDeque<E> implements Closeable {
+
+  /*
+   * IMPLEMENTATION NOTES ----------------------------------
+   *
+   * Locks are always taken in the order producer lock, then deque lock. The producer lock is
+   * uncontended unless the flusher thread is visiting that producer.
+   *
+   * A buffer can only be linked as a block when the deque's last block is full. A flush links a
+   * partial block, so every publish first tops up the last block from the front of the buffer.
+   * When that leaves part of a full buffer over, the rest stays buffered instead of being linked as
+   * another partial block. The buffer then fills up again at the next block boundary, and later
+   * full buffers link whole.
+   */
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final HybridDeque<E> elements = new HybridDeque<>();
+  private final Set<Producer> producers = ConcurrentHashMap.newKeySet();
+  private final long maxDelayNanos;
+  private final ScheduledExecutorService flusher;
+
+
+  /**
+   * Buffers the elements of one producer thread. A handle should only be used by one thread at a
+   * time.
+   */
+  public final class Producer implements Closeable {
+    private final ReentrantLock bufferLock = new ReentrantLock();
+    private E[] buffer = newBuffer();
+    private int count;
+    private long firstOfferNanos;
+    private boolean closed;
+
+    private Producer() {
+    }
+
+    /**
+     * Add an element to the buffer, publishing the buffer if this fills it.
+     *
+     * @param e The element to add
+     * @throws NullPointerException If e is null
+     * @throws IllegalStateException If this producer is closed
+     */
+    public void offer(E e) {
+      if (e == null) {
+        throw new NullPointerException();
+      }
+      bufferLock.lock();
+      try {
+        if (closed) {
+          throw new IllegalStateException("Producer is closed");
+        }
+        if (count == 0) {
+          firstOfferNanos = System.nanoTime();
+        }
+        buffer[count++] = e;
+        if (count == buffer.length) {
+          publish(false);
+        }
+      } finally {
+        bufferLock.unlock();
+      }
+    }
+
+    /**
+     * Publish the buffered elements now, even if the buffer is not full.
+     */
+    public void flush() {
+      bufferLock.lock();
+      try {
+        publish(true);
+      } finally {
+        bufferLock.unlock();
+      }
+    }
+
+    /**
+     * Publish the buffered elements and stop accepting new ones.
+     */
+    @Override
+    public void close() {
+      bufferLock.lock();
+      try {
+        publish(true);
+        closed = true;
+      } finally {
+        bufferLock.unlock();
+      }
+      producers.remove(this);
+    }
+
+    /**
+     * Publish the buffer if its oldest element was offered at or before the deadline.
+     */
+    private void flushOlderThan(long deadlineNanos) {
+      bufferLock.lock();
+      try {
+        if (count > 0 && firstOfferNanos - deadlineNanos <= 0) {
+          publish(true);
+        }
+      } finally {
+        bufferLock.unlock();
+      }
+    }
+
+    /**
+     * Top up the deque's last block from the buffer, then hand the rest of the buffer to the deque
+     * and start a new one. Unless all is set, a remainder shorter than a block stays buffered.
+     * Called with bufferLock held.
+     */
+    private void publish(boolean all) {
+      if (count == 0) {
+        return;
+      }
+      lock.lock();
+      try {
+        int filled = elements.fillLastBlock(buffer, count);
+        if (filled > 0) {
+          System.arraycopy(buffer, filled, buffer, 0, count - filled);
+          Arrays.fill(buffer, count - filled, count, null);
+          count -= filled;
+        }
+        if (count == 0 || (!all && count < buffer.length)) {
+          return; // The remainder keeps its original offer time, so it is flushed no later
+        }
+        elements.offerBlockLast(buffer, count);
+      } finally {
+        lock.unlock();
+      }
+      buffer = newBuffer();
+      count = 0;
+    }
+  }
+
+
+  /**
+   * Create an empty deque.
+   *
+   * @param maxDelay The longest time an element may stay in a producer's buffer, roughly
+   * @param unit The unit of maxDelay
+   * @throws IllegalArgumentException If maxDelay is not positive
+   */
+  public BatchingDeque(long maxDelay, TimeUnit unit) {
+    if (maxDelay <= 0) {
+      throw new IllegalArgumentException("maxDelay must be positive");
+    }
+    this.maxDelayNanos = unit.toNanos(maxDelay);
+    this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "BatchingDeque-flush");
+      thread.setDaemon(true);
+      return thread;
+    });
+    // Checking twice per delay keeps the worst case at one and a half times the delay.
+    long period = Math.max(1, maxDelayNanos / 2);
+    flusher.scheduleAtFixedRate(this::flushStale, period, period, TimeUnit.NANOSECONDS);
+  }
+
+
+  /**
+   * Return a new handle for a producer thread.
+   */
+  public Producer producer() {
+    Producer producer = new Producer();
+    producers.add(producer);
+    return producer;
+  }
+
+
+  /**
+   * Remove and return the first published element.
+   *
+   * @return The element, or null if no element has been published
+   */
+  public E pollFirst() {
+    lock.lock();
+    try {
+      return elements.pollFirst();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+
+  /**
+   * Return the first published element without removing it.
+   *
+   * @return The element, or null if no element has been published
+   */
+  public E peekFirst() {
+    lock.lock();
+    try {
+      return elements.peekFirst();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+
+  /**
+   * Return the number of published elements. Elements still in producer buffers are not counted.
+   */
+  public int size() {
+    lock.lock();
+    try {
+      return elements.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+
+  /**
+   * Flush every open producer and stop the background flusher. Producers can still be used
+   * afterwards, but their buffers are then only published when full, flushed or closed.
+   */
+  @Override
+  public void close() {
+    flusher.shutdownNow();
+    for (Producer producer : producers) {
+      producer.flush();
+    }
+  }
+
+
+  private void flushStale() {
+    long deadline = System.nanoTime() - maxDelayNanos;
+    for (Producer producer : producers) {
+      producer.flushOlderThan(deadline);
+    }
+  }
+
+
+  @SuppressWarnings("unchecked")
+  private E[] newBuffer() {
+    return (E[]) new Object[HybridDeque.blockSize()];
+  }
+
+}
@@ -0,0 +1,146 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class BatchingDequeTest {
+
+  @Test
+  void testPublishFullBuffers() {
+    HybridDeque.setBlockSize(4);
+    try (BatchingDeque<Integer> deque = new BatchingDeque<>(1, TimeUnit.HOURS)) {
+      BatchingDeque<Integer>.Producer producer = deque.producer();
+      assertThrows(NullPointerException.class, () -> {
+        producer.offer(null);
+      });
+
+      for (int i = 0; i < 10; i++) {
+        producer.offer(i);
+      }
+      // Two full buffers are published, the last two elements are still buffered.
+      assertEquals(8, deque.size());
+      assertEquals(0, deque.peekFirst());
+
+      producer.flush();
+      assertEquals(10, deque.size());
+      for (int i = 0; i < 10; i++) {
+        assertEquals(i, deque.pollFirst());
+      }
+      assertNull(deque.pollFirst());
+      assertTrue(deque.isEmpty());
+    }
+  }
+
+  @Test
+  void testPublishStaysBlockAligned() {
+    HybridDeque.setBlockSize(4);
+    try (BatchingDeque<Integer> deque = new BatchingDeque<>(1, TimeUnit.HOURS)) {
+      BatchingDeque<Integer>.Producer producer = deque.producer();
+      producer.offer(0);
+      producer.flush();
+      assertEquals(1, deque.size());
+
+      // The full buffer tops up the partial last block and keeps its last element.
+      for (int i = 1; i <= 4; i++) {
+        producer.offer(i);
+      }
+      assertEquals(4, deque.size());
+
+      // From here on full buffers start on a block boundary.
+      for (int i = 5; i < 16; i++) {
+        producer.offer(i);
+        assertEquals(i < 7 ? 4 : i < 11 ? 8 : i < 15 ? 12 : 16, deque.size());
+      }
+      producer.offer(16);
+      assertEquals(16, deque.size());
+
+      producer.offer(17);
+      producer.close();
+      assertEquals(18, deque.size());
+      for (int i = 0; i < 18; i++) {
+        assertEquals(i, deque.pollFirst());
+      }
+      assertTrue(deque.isEmpty());
+    }
+  }
+
+  @Test
+  void testFlushOnClose() {
+    HybridDeque.setBlockSize(4);
+    BatchingDeque<Integer> deque = new BatchingDeque<>(1, TimeUnit.HOURS);
+    BatchingDeque<Integer>.Producer first = deque.producer();
+    BatchingDeque<Integer>.Producer second = deque.producer();
+    first.offer(1);
+    second.offer(2);
+
+    first.close();
+    assertEquals(1, deque.size());
+    assertThrows(IllegalStateException.class, () -> {
+      first.offer(3);
+    });
+
+    deque.close();
+    assertEquals(2, deque.size());
+    assertEquals(1, deque.pollFirst());
+    assertEquals(2, deque.pollFirst());
+  }
+
+  @Test
+  void testFlushOnTimeout() throws InterruptedException {
+    HybridDeque.setBlockSize(64);
+    try (BatchingDeque<Integer> deque = new BatchingDeque<>(10, TimeUnit.MILLISECONDS)) {
+      BatchingDeque<Integer>.Producer producer = deque.producer();
+      producer.offer(7);
+
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+      while (deque.isEmpty() && System.nanoTime() < deadline) {
+        Thread.sleep(5);
+      }
+      assertEquals(7, deque.pollFirst());
+    }
+  }
+
+  @Test
+  void testConcurrentProducers() throws InterruptedException {
+    HybridDeque.setBlockSize(4);
+    int threads = 8;
+    int perThread = 10000;
+    try (BatchingDeque<Integer> deque = new BatchingDeque<>(1, TimeUnit.MILLISECONDS)) {
+      List<Thread> producers = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        int base = t * perThread;
+        Thread thread = new Thread(() -> {
+          try (BatchingDeque<Integer>.Producer producer = deque.producer()) {
+            for (int i = 0; i < perThread; i++) {
+              producer.offer(base + i);
+            }
+          }
+        });
+        producers.add(thread);
+        thread.start();
+      }
+
+      // Consume while producing; each producer's elements must come out in order.
+      int[] next = new int[threads];
+      int consumed = 0;
+      while (consumed < threads * perThread) {
+        Integer e = deque.pollFirst();
+        if (e == null) {
+          Thread.yield();
+          continue;
+        }
+        int t = e / perThread;
+        assertEquals(next[t]++, e % perThread);
+        consumed++;
+      }
+      for (Thread thread : producers) {
+        thread.join();
+      }
+      assertTrue(deque.isEmpty());
+    }
+  }
+}
@@ -0,0 +1,362 @@
+import java.util.HashMap;
+import java.util.function.ToLongBiFunction;
+
+/**
+ * Bounded cache that keeps its entries in recency order in a chain of HybridDeque-sized blocks,
+ * with a hash index from each key to the block and slot that hold its entry. Promoting or removing
+ * an entry leaves a tombstone in its old slot instead of shifting anything, so both take constant
+ * time. Compaction is incremental: whenever a tombstone leaves a block sparse enough to share one
+ * block with a neighbour, the two are packed together, so tombstones never pile up in the chain.
+ *
+ * <p>In access order (LRU) both get and put move an entry to the most recent end. In insertion order
+ * (FIFO) entries keep the position of their first insertion. When the total weight exceeds the
+ * limit, entries are evicted from the least recent end. With the size-based constructor every
+ * entry weighs 1.
+ *
+ * <p>This cache does not allow null keys or values and is not thread-safe.
+ */
+public class BlockCache<K, V> {
+
+  /*
+   * IMPLEMENTATION NOTES ----------------------------------
+   *
+   * Entries are appended at last.slots[last.used]. A slot below used that holds null is a
+   * tombstone. block.start is the first slot that may still be live, so eviction never rescans
+   * tombstones it has already passed. block.live counts the entries a block really holds.
+   *
+   * The chain always contains at least one block, and first.prev == null, last.next == null.
+   */
+
+  private final HashMap<K, Entry> index = new HashMap<>();
+  private final long maxWeight;
+  private final ToLongBiFunction<? super K, ? super V> weigher;
+  private final boolean accessOrder;
+  private final int blockSize;
+
+  private Block first;
+  private Block last;
+  private long weight;
+  private long hits;
+  private long misses;
+  private long evictions;
+
+
+  /**
+   * A cached mapping and its current position in the chain.
+   */
+  private class Entry {
+    private final K key;
+    private V value;
+    private long weight;
+    private Block block;
+    private int slot;
+
+    private Entry(K key, V value, long weight) {
+      this.key = key;
+      this.value = value;
+      this.weight = weight;
+    }
+  }
+
+
+  /**
+   * Doubly linked block of entries in recency order, least recent first.
+   */
+  private class Block {
+    private final Object[] slots = new Object[blockSize];
+    private int start;
+    private int used;
+    private int live;
+    private Block prev;
+    private Block next;
+
+    @SuppressWarnings("unchecked")
+    private Entry get(int slot) {
+      return (Entry) slots[slot];
+    }
+  }
+
+
+  /**
+   * Create a cache that holds at most maxSize entries.
+   *
+   * @param maxSize The largest number of entries
+   * @param accessOrder true for LRU order, false for FIFO order
+   * @throws IllegalArgumentException If maxSize is negative
+   */
+  public BlockCache(int maxSize, boolean accessOrder) {
+    this(maxSize, (key, value) -> 1, accessOrder);
+  }
+
+
+  /**
+   * Create a cache whose entries may weigh at most maxWeight in total.
+   *
+   * @param maxWeight The largest total weight
+   * @param weigher Returns the non-negative weight of an entry
+   * @param accessOrder true for LRU order, false for FIFO order
+   * @throws IllegalArgumentException If maxWeight is negative
+   */
+  public BlockCache(long maxWeight, ToLongBiFunction<? super K, ? super V> weigher,
+      boolean accessOrder) {
+    if (maxWeight < 0) {
+      throw new IllegalArgumentException("maxWeight must not be negative");
+    }
+    this.maxWeight = maxWeight;
+    this.weigher = weigher;
+    this.accessOrder = accessOrder;
+    this.blockSize = HybridDeque.blockSize();
+    this.first = new Block();
+    this.last = first;
+  }
+
+
+  /**
+   * Return the value for a key, moving it to the most recent end in access order.
+   *
+   * @param key The key to look up
+   * @return The value, or null if the key is not cached
+   */
+  public V get(Object key) {
+    Entry entry = index.get(key);
+    if (entry == null) {
+      misses++;
+      return null;
+    }
+    hits++;
+    if (accessOrder) {
+      promote(entry);
+    }
+    return entry.value;
+  }
+
+
+  /**
+   * Return whether a key is cached, without counting a hit or changing its position.
+   */
+  public boolean containsKey(Object key) {
+    return index.containsKey(key);
+  }
+
+
+  /**
+   * Add or replace a mapping, then evict least recent entries while the cache is over its weight
+   * limit. An entry that alone is heavier than the limit is evicted straight away, together with
+   * any mapping it replaced, and leaves the other entries in place.
+   *
+   * @param key The key
+   * @param value The value
+   * @return The previous value, or null if there was none
+   * @throws NullPointerException If key or value is null
+   * @throws IllegalArgumentException If the weigher returns a negative weight
+   */
+  public V put(K key, V value) {
+    if (key == null || value == null) {
+      throw new NullPointerException();
+    }
+    long entryWeight = weigher.applyAsLong(key, value);
+    if (entryWeight < 0) {
+      throw new IllegalArgumentException("Negative weight: " + entryWeight);
+    }
+    if (entryWeight > maxWeight) {
+      V previous = remove(key);
+      evictions++;
+      return previous;
+    }
+
+    V previous = null;
+    Entry entry = index.get(key);
+    if (entry == null) {
+      entry = new Entry(key, value, entryWeight);
+      index.put(key, entry);
+      append(entry);
+    } else {
+      previous = entry.value;
+      weight -= entry.weight;
+      entry.value = value;
+      entry.weight = entryWeight;
+      if (accessOrder) {
+        promote(entry);
+      }
+    }
+    weight += entryWeight;
+
+    while (weight > maxWeight) {
+      evict();
+    }
+    return previous;
+  }
+
+
+  /**
+   * Remove a mapping.
+   *
+   * @param key The key to remove
+   * @return The removed value, or null if the key was not cached
+   */
+  public V remove(Object key) {
+    Entry entry = index.remove(key);
+    if (entry == null) {
+      return null;
+    }
+    weight -= entry.weight;
+    tombstone(entry);
+    return entry.value;
+  }
+
+
+  /**
+   * Remove every mapping. Hit, miss and eviction counts are kept.
+   */
+  public void clear() {
+    index.clear();
+    first = new Block();
+    last = first;
+    weight = 0;
+  }
+
+
+  public int size() {
+    return index.size();
+  }
+
+
+  /**
+   * Return the total weight of the cached entries.
+   */
+  public long weight() {
+    return weight;
+  }
+
+
+  public long hitCount() {
+    return hits;
+  }
+
+
+  public long missCount() {
+    return misses;
+  }
+
+
+  public long evictionCount() {
+    return evictions;
+  }
+
+
+  /**
+   * Move an entry to the most recent end, leaving a tombstone where it was.
+   */
+  private void promote(Entry entry) {
+    if (entry.block == last && entry.slot == last.used - 1) { // Already most recent
+      return;
+    }
+    tombstone(entry);
+    append(entry);
+  }
+
+
+  private void append(Entry entry) {
+    if (last.used == blockSize) {
+      Block block = new Block();
+      block.prev = last;
+      last.next = block;
+      last = block;
+    }
+    entry.block = last;
+    entry.slot = last.used;
+    last.slots[last.used++] = entry;
+    last.live++;
+  }
+
+
+  /**
+   * Clear an entry's slot and then tidy up its block: drop it if it is empty, or merge it with a
+   * neighbour if the two fit in one block.
+   */
+  private void tombstone(Entry entry) {
+    Block block = entry.block;
+    block.slots[entry.slot] = null;
+    block.live--;
+    entry.block = null;
+
+    if (block.live == 0) {
+      unlink(block);
+    } else if (block.next != null && block.live + block.next.live <= blockSize) {
+      merge(block, block.next);
+    } else if (block.prev != null && block.prev.live + block.live <= blockSize) {
+      merge(block.prev, block);
+    }
+  }
+
+
+  /**
+   * Remove the least recent live entry.
+   */
+  private void evict() {
+    Block block = first;
+    while (block.get(block.start) == null) {
+      block.start++;
+    }
+    Entry entry = block.get(block.start);
+    index.remove(entry.key);
+    weight -= entry.weight;
+    evictions++;
+    tombstone(entry);
+  }
+
+
+  /**
+   * Pack the live entries of two adjacent blocks into the first one, in order, and unlink the
+   * second.
+   */
+  private void merge(Block into, Block from) {
+    int used = move(into, into, 0);
+    into.used = move(from, into, used);
+    into.start = 0;
+    into.live += from.live;
+    from.live = 0;
+    unlink(from);
+  }
+
+
+  /**
+   * Move the live entries of a block to into's slots, starting at slot to. When both blocks are the
+   * same, to never passes the slot being read. Returns the next free slot.
+   */
+  private int move(Block from, Block into, int to) {
+    for (int i = from.start; i < from.used; i++) {
+      Entry entry = from.get(i);
+      if (entry != null) {
+        from.slots[i] = null;
+        into.slots[to] = entry;
+        entry.block = into;
+        entry.slot = to++;
+      }
+    }
+    return to;
+  }
+
+
+  /**
+   * Remove an empty block from the chain. The only block is reset instead.
+   */
+  private void unlink(Block block) {
+    if (block.prev == null && block.next == null) {
+      block.start = 0;
+      block.used = 0;
+      return;
+    }
+    if (block.prev != null) {
+      block.prev.next = block.next;
+    } else {
+      first = block.next;
+    }
+    if (block.next != null) {
+      block.next.prev = block.prev;
+    } else {
+      last = block.prev;
+    }
+  }
+
+}
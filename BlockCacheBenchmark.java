@@ -0,0 +1,125 @@
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Hit rate and throughput of BlockCache against a LinkedHashMap in access-order mode, both used as
+ * size-bounded LRU caches. Keys follow a Zipf distribution; every lookup that misses puts the key.
+ * A FIFO BlockCache, which does not promote on a hit, is included for comparison.
+ *
+ * <p>Usage: java BlockCacheBenchmark [operations] [keys] [capacity] [rounds]. The defaults are
+ * 10,000,000 lookups over 1,000,000 keys with a capacity of 100,000 and 3 rounds, after one
+ * warm-up round.
+ */
+public class BlockCacheBenchmark {
+
+  /** Skew of the key distribution; 1 is the classic Zipf law. */
+  private static final double ZIPF_EXPONENT = 1.0;
+
+
+  /**
+   * The cache operations the workload needs, so that every variant runs the same loop.
+   */
+  private interface Cache {
+    Integer get(Integer key);
+
+    void put(Integer key, Integer value);
+  }
+
+
+  public static void main(String[] args) {
+    int operations = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+    int keys = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+    int capacity = args.length > 2 ? Integer.parseInt(args[2]) : 100_000;
+    int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+
+    Integer[] trace = zipfTrace(operations, keys, new Random(1));
+    System.out.printf("%,d lookups over %,d keys, capacity %,d%n", operations, keys, capacity);
+    for (int round = 0; round <= rounds; round++) {
+      String label = round == 0 ? "warm-up" : "round " + round;
+      report(label, "BlockCache LRU", trace, blockCache(capacity, true));
+      report(label, "LinkedHashMap LRU", trace, linkedHashMap(capacity));
+      report(label, "BlockCache FIFO", trace, blockCache(capacity, false));
+    }
+  }
+
+
+  private static Cache blockCache(int capacity, boolean accessOrder) {
+    BlockCache<Integer, Integer> cache = new BlockCache<>(capacity, accessOrder);
+    return new Cache() {
+      @Override
+      public Integer get(Integer key) {
+        return cache.get(key);
+      }
+
+      @Override
+      public void put(Integer key, Integer value) {
+        cache.put(key, value);
+      }
+    };
+  }
+
+
+  private static Cache linkedHashMap(int capacity) {
+    Map<Integer, Integer> map = new LinkedHashMap<Integer, Integer>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Integer, Integer> eldest) {
+        return size() > capacity;
+      }
+    };
+    return new Cache() {
+      @Override
+      public Integer get(Integer key) {
+        return map.get(key);
+      }
+
+      @Override
+      public void put(Integer key, Integer value) {
+        map.put(key, value);
+      }
+    };
+  }
+
+
+  /**
+   * Return lookups drawn from a Zipf distribution over the given number of keys. Each key is a
+   * single Integer instance, so no variant pays for boxing.
+   */
+  private static Integer[] zipfTrace(int operations, int keys, Random random) {
+    double[] cumulative = new double[keys];
+    double total = 0;
+    for (int k = 0; k < keys; k++) {
+      total += 1 / Math.pow(k + 1, ZIPF_EXPONENT);
+      cumulative[k] = total;
+    }
+    Integer[] boxed = new Integer[keys];
+    for (int k = 0; k < keys; k++) {
+      boxed[k] = k;
+    }
+
+    Integer[] trace = new Integer[operations];
+    for (int i = 0; i < operations; i++) {
+      int k = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+      trace[i] = boxed[Math.min(k < 0 ? -k - 1 : k, keys - 1)];
+    }
+    return trace;
+  }
+
+
+  private static void report(String label, String variant, Integer[] trace, Cache cache) {
+    long hits = 0;
+    long start = System.nanoTime();
+    for (Integer key : trace) {
+      if (cache.get(key) != null) {
+        hits++;
+      } else {
+        cache.put(key, key);
+      }
+    }
+    long nanos = System.nanoTime() - start;
+    System.out.printf("%-8s %-18s hit rate %5.1f%%  %6.2f M lookups/s%n", label, variant,
+        100.0 * hits / trace.length, trace.length * 1e3 / nanos);
+  }
+
+}
@@ -0,0 +1,158 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class BlockCacheTest {
+
+  private static <K, V> Map<K, V> lruModel(int maxSize, boolean accessOrder) {
+    return new LinkedHashMap<K, V>(16, 0.75f, accessOrder) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+        return size() > maxSize;
+      }
+    };
+  }
+
+  private static void checkAgainstModel(boolean accessOrder) {
+    HybridDeque.setBlockSize(4);
+    BlockCache<Integer, Integer> cache = new BlockCache<>(50, accessOrder);
+    Map<Integer, Integer> model = lruModel(50, accessOrder);
+    Random random = new Random(7);
+
+    for (int i = 0; i < 20000; i++) {
+      int key = random.nextInt(100);
+      int op = random.nextInt(10);
+      if (op < 4) {
+        assertEquals(model.get(key), cache.get(key));
+      } else if (op < 9) {
+        assertEquals(model.put(key, i), cache.put(key, i));
+      } else {
+        assertEquals(model.remove(key), cache.remove(key));
+      }
+      assertEquals(model.size(), cache.size());
+    }
+    for (int key = 0; key < 100; key++) {
+      assertEquals(model.containsKey(key), cache.containsKey(key));
+    }
+  }
+
+  @Test
+  void testLruMatchesLinkedHashMap() {
+    checkAgainstModel(true);
+  }
+
+  @Test
+  void testFifoMatchesLinkedHashMap() {
+    checkAgainstModel(false);
+  }
+
+  @Test
+  void testLruEviction() {
+    HybridDeque.setBlockSize(4);
+    BlockCache<String, Integer> cache = new BlockCache<>(3, true);
+    assertThrows(NullPointerException.class, () -> {
+      cache.put(null, 1);
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      new BlockCache<String, Integer>(-1, true);
+    });
+
+    cache.put("a", 1);
+    cache.put("b", 2);
+    cache.put("c", 3);
+    assertEquals(1, cache.get("a"));
+    cache.put("d", 4);
+
+    assertFalse(cache.containsKey("b"));
+    assertTrue(cache.containsKey("a"));
+    assertNull(cache.get("b"));
+    assertEquals(1, cache.hitCount());
+    assertEquals(1, cache.missCount());
+    assertEquals(1, cache.evictionCount());
+
+    cache.clear();
+    assertEquals(0, cache.size());
+    assertNull(cache.get("a"));
+    cache.put("e", 5);
+    assertEquals(5, cache.get("e"));
+  }
+
+  @Test
+  void testWeightedEviction() {
+    HybridDeque.setBlockSize(4);
+    BlockCache<String, String> cache =
+        new BlockCache<>(10, (key, value) -> value.length(), false);
+
+    cache.put("a", "xxxx");
+    cache.put("b", "xxxx");
+    assertEquals(8, cache.weight());
+    cache.put("c", "xxx");
+    assertFalse(cache.containsKey("a"));
+    assertEquals(7, cache.weight());
+
+    cache.put("b", "x");
+    assertEquals(4, cache.weight());
+    cache.put("d", "xxxxxxxxxxx");
+    assertFalse(cache.containsKey("d"));
+    assertEquals(2, cache.size());
+    assertEquals(4, cache.weight());
+  }
+
+  @Test
+  void testOversizedEntryLeavesOthers() {
+    HybridDeque.setBlockSize(4);
+    BlockCache<String, String> cache =
+        new BlockCache<>(10, (key, value) -> value.length(), true);
+
+    cache.put("a", "xxxxx");
+    cache.put("b", "xxxxx");
+    assertNull(cache.put("huge", "xxxxxxxxxxx"));
+    assertEquals(1, cache.evictionCount());
+    assertFalse(cache.containsKey("huge"));
+    assertEquals("xxxxx", cache.get("a"));
+    assertEquals("xxxxx", cache.get("b"));
+    assertEquals(10, cache.weight());
+
+    // Replacing a mapping with an oversized value evicts the key.
+    assertEquals("xxxxx", cache.put("a", "xxxxxxxxxxx"));
+    assertEquals(2, cache.evictionCount());
+    assertFalse(cache.containsKey("a"));
+    assertEquals(1, cache.size());
+    assertEquals(5, cache.weight());
+  }
+
+  @Test
+  void testPromotionCompactsBlocks() {
+    HybridDeque.setBlockSize(4);
+    BlockCache<Integer, Integer> cache = new BlockCache<>(1000, true);
+    for (int i = 0; i < 100; i++) {
+      cache.put(i, i);
+    }
+    // Repeatedly promoting everything leaves a tombstone per get; compaction keeps up.
+    for (int round = 0; round < 50; round++) {
+      for (int i = 0; i < 100; i++) {
+        assertEquals(i, cache.get(i));
+      }
+    }
+    for (int i = 0; i < 100; i += 2) {
+      cache.remove(i);
+    }
+
+    BlockCache<Integer, Integer> small = new BlockCache<>(10, true);
+    for (int i = 0; i < 100; i++) {
+      small.put(i, i);
+      small.get(i / 2 * 2);
+    }
+    assertEquals(10, small.size());
+    assertEquals(50, cache.size());
+    for (int i = 1; i < 100; i += 2) {
+      assertEquals(i, cache.get(i));
+    }
+  }
+}
@@ -0,0 +1,37 @@
+import java.util.List;
+
+/**
+ * Encodes a whole block of deque elements into a compact byte form, for blocks that HybridDeque
+ * freezes because they will not be touched for a while. See BlockCodecs for ready-made codecs.
+ *
+ * @param <E> The element type
+ */
+public interface BlockCodec<E> {
+
+  /**
+   * Encode every element of a full block.
+   *
+   * @param elements A view of the block's elements, none of which are null
+   * @return The encoded bytes
+   */
+  byte[] encode(List<E> elements);
+
+  /**
+   * Decode bytes produced by encode back into a block.
+   *
+   * @param data Bytes returned by encode
+   * @param elements A view of the block, of the original length, to set the decoded elements into
+   */
+  void decode(byte[] data, List<E> elements);
+
+  /**
+   * Estimate how many heap bytes the elements of a block occupy, including the reference array.
+   * Used only to report how much freezing saves. The default counts just the reference array.
+   *
+   * @param elements A view of the block's elements
+   * @return The estimated size in bytes
+   */
+  default long heapBytes(List<E> elements) {
+    return 16L + 4L * elements.size();
+  }
+}
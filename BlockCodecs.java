@@ -0,0 +1,155 @@
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ready-made BlockCodecs for common kinds of cold data.
+ */
+public final class BlockCodecs {
+
+  private BlockCodecs() {}
+
+
+  /**
+   * Return a codec for numeric records that stores the first value and then the difference between
+   * each value and the one before it, as zigzag variable-length integers. Runs of close values,
+   * such as timestamps or sequence numbers, shrink to one or two bytes each.
+   */
+  public static BlockCodec<Long> deltaVarint() {
+    return new DeltaVarintCodec();
+  }
+
+
+  /**
+   * Return a codec for strings that stores each distinct string of a block once, followed by an
+   * index into that dictionary for every element. Repeated strings decode to a single shared
+   * instance.
+   */
+  public static BlockCodec<String> dictionary() {
+    return new DictionaryCodec();
+  }
+
+
+  private static final class DeltaVarintCodec implements BlockCodec<Long> {
+
+    @Override
+    public byte[] encode(List<Long> elements) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream(elements.size() * 2);
+      long previous = 0;
+      for (Long e : elements) {
+        writeVarLong(out, zigzag(e - previous));
+        previous = e;
+      }
+      return out.toByteArray();
+    }
+
+    @Override
+    public void decode(byte[] data, List<Long> elements) {
+      ByteBuffer in = ByteBuffer.wrap(data);
+      long previous = 0;
+      for (int i = 0; i < elements.size(); i++) {
+        previous += unzigzag(readVarLong(in));
+        elements.set(i, previous);
+      }
+    }
+
+    @Override
+    public long heapBytes(List<Long> elements) {
+      // Reference array plus one 16 byte Long object per element.
+      return 16L + 20L * elements.size();
+    }
+  }
+
+
+  private static final class DictionaryCodec implements BlockCodec<String> {
+
+    @Override
+    public byte[] encode(List<String> elements) {
+      Map<String, Integer> dictionary = new HashMap<>();
+      ByteArrayOutputStream words = new ByteArrayOutputStream();
+      ByteArrayOutputStream indices = new ByteArrayOutputStream(elements.size());
+      for (String e : elements) {
+        Integer index = dictionary.get(e);
+        if (index == null) {
+          index = dictionary.size();
+          dictionary.put(e, index);
+          byte[] bytes = e.getBytes(StandardCharsets.UTF_8);
+          writeVarLong(words, bytes.length);
+          words.writeBytes(bytes);
+        }
+        writeVarLong(indices, index);
+      }
+
+      ByteArrayOutputStream out = new ByteArrayOutputStream(words.size() + indices.size() + 5);
+      writeVarLong(out, dictionary.size());
+      out.writeBytes(words.toByteArray());
+      out.writeBytes(indices.toByteArray());
+      return out.toByteArray();
+    }
+
+    @Override
+    public void decode(byte[] data, List<String> elements) {
+      ByteBuffer in = ByteBuffer.wrap(data);
+      String[] dictionary = new String[(int) readVarLong(in)];
+      for (int i = 0; i < dictionary.length; i++) {
+        int length = (int) readVarLong(in);
+        dictionary[i] = new String(data, in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+      }
+      for (int i = 0; i < elements.size(); i++) {
+        elements.set(i, dictionary[(int) readVarLong(in)]);
+      }
+    }
+
+    @Override
+    public long heapBytes(List<String> elements) {
+      // Reference array plus, for every distinct String object, its header and backing array.
+      long bytes = 16L + 4L * elements.size();
+      Map<String, Boolean> seen = new IdentityHashMap<>();
+      for (String e : elements) {
+        if (seen.put(e, Boolean.TRUE) == null) {
+          bytes += 40L + e.length();
+        }
+      }
+      return bytes;
+    }
+  }
+
+
+  private static long zigzag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+
+  private static long unzigzag(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+
+  private static void writeVarLong(ByteArrayOutputStream out, long value) {
+    while ((value & ~0x7FL) != 0) {
+      out.write((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    out.write((int) value);
+  }
+
+
+  private static long readVarLong(ByteBuffer in) {
+    long value = 0;
+    int shift = 0;
+    while (true) {
+      byte b = in.get();
+      value |= (long) (b & 0x7F) << shift;
+      if (b >= 0) {
+        return value;
+      }
+      shift += 7;
+    }
+  }
+
+}
@@ -0,0 +1,45 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class BlockCodecsTest {
+
+  @Test
+  void testDeltaVarint() {
+    BlockCodec<Long> codec = BlockCodecs.deltaVarint();
+    List<Long> block = Arrays.asList(1_700_000_000_000L, 1_700_000_000_005L, 1_699_999_999_990L,
+        Long.MAX_VALUE, Long.MIN_VALUE, 0L, -1L);
+
+    byte[] data = codec.encode(block);
+    Long[] decoded = new Long[block.size()];
+    codec.decode(data, Arrays.asList(decoded));
+    assertEquals(block, Arrays.asList(decoded));
+  }
+
+  @Test
+  void testDeltaVarintIsCompact() {
+    BlockCodec<Long> codec = BlockCodecs.deltaVarint();
+    Long[] block = new Long[64];
+    for (int i = 0; i < block.length; i++) {
+      block[i] = 1_700_000_000_000L + i * 10;
+    }
+    byte[] data = codec.encode(Arrays.asList(block));
+    assertTrue(data.length < 6 + block.length);
+    assertTrue(codec.heapBytes(Arrays.asList(block)) > data.length);
+  }
+
+  @Test
+  void testDictionary() {
+    BlockCodec<String> codec = BlockCodecs.dictionary();
+    List<String> block = Arrays.asList("GET", "POST", "GET", "GET", "", "h\u00e9llo", "POST");
+
+    byte[] data = codec.encode(block);
+    String[] decoded = new String[block.size()];
+    codec.decode(data, Arrays.asList(decoded));
+    assertEquals(block, Arrays.asList(decoded));
+    assertSame(decoded[0], decoded[2]);
+  }
+}
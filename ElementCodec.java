@@ -0,0 +1,38 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Converts deque elements to and from bytes for HybridDeque's binary stream format. Implementations
+ * must be able to decode exactly what they encode, and must not read past the bytes they wrote.
+ *
+ * @param <E> The element type
+ */
+public interface ElementCodec<E> {
+
+  /**
+   * Return the number of bytes encode will write for the given element.
+   *
+   * @param e The element to measure
+   * @return The encoded size in bytes
+   */
+  int encodedSize(E e);
+
+  /**
+   * Write the element into the buffer, starting at its current position.
+   *
+   * @param e The element to encode
+   * @param out A buffer with at least encodedSize(e) bytes remaining
+   */
+  void encode(E e, ByteBuffer out);
+
+  /**
+   * Read one element from the buffer, starting at its current position. The buffer may hold the
+   * encoded elements that follow as well, so decode must consume exactly the bytes that encode
+   * wrote for this element and leave the position just past them. A variable-length encoding must
+   * therefore record its own length, for instance as a prefix.
+   *
+   * @param in A buffer positioned at the bytes written by one call to encode, which may be followed
+   *        by further encoded elements
+   * @return The decoded element, never null
+   */
+  E decode(ByteBuffer in);
+}
@@ -0,0 +1,107 @@
+import java.util.Random;
+import java.util.function.IntFunction;
+
+/**
+ * Bytes saved and decode cost of frozen interior blocks. Two append-mostly deques are built:
+ * Long timestamps that grow by small steps, frozen with BlockCodecs.deltaVarint(), and strings
+ * from a small vocabulary, frozen with BlockCodecs.dictionary(). For each, the time to freeze,
+ * the codec's estimate of the bytes saved, the heap in use before and after freezing and the
+ * time to drain the deque are reported, together with the per-block decode time that
+ * freezeStats() collects while draining. Draining an unfrozen copy of the same deque is the
+ * reference.
+ *
+ * <p>Heap figures come from Runtime after System.gc(), so they are approximate.
+ *
+ * <p>Usage: java FreezeBenchmark [elements] [rounds]. The defaults are 5,000,000 elements and 3
+ * rounds, after one warm-up round.
+ */
+public class FreezeBenchmark {
+
+  private static final int HOT_BLOCKS = 2;
+
+
+  public static void main(String[] args) {
+    int elements = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+    int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+    Random random = new Random(1);
+    long[] timestamps = new long[elements];
+    long time = System.currentTimeMillis();
+    for (int i = 0; i < elements; i++) {
+      time += random.nextInt(10);
+      timestamps[i] = time;
+    }
+    int[] words = new int[elements];
+    for (int i = 0; i < elements; i++) {
+      words[i] = random.nextInt(32);
+    }
+
+    System.out.printf("%,d elements%n", elements);
+    for (int round = 0; round <= rounds; round++) {
+      String label = round == 0 ? "warm-up" : "round " + round;
+      run(label, "Long delta+varint", elements, i -> timestamps[i], BlockCodecs.deltaVarint());
+      // A new String per element, as records parsed from a log would have.
+      run(label, "String dictionary", elements, i -> new String("status-" + words[i]),
+          BlockCodecs.dictionary());
+    }
+  }
+
+
+  private static <E> void run(String label, String variant, int elements, IntFunction<E> element,
+      BlockCodec<E> codec) {
+    HybridDeque<E> deque = new HybridDeque<>();
+    for (int i = 0; i < elements; i++) {
+      deque.offerLast(element.apply(i));
+    }
+
+    long heapBefore = usedHeap();
+    long start = System.nanoTime();
+    deque.freezeInterior(codec, HOT_BLOCKS);
+    long freezeNanos = System.nanoTime() - start;
+    long heapAfter = usedHeap();
+    HybridDeque.FreezeStats frozen = deque.freezeStats();
+
+    start = System.nanoTime();
+    long drained = drain(deque);
+    long drainNanos = System.nanoTime() - start;
+    HybridDeque.FreezeStats thawed = deque.freezeStats();
+
+    HybridDeque<E> reference = new HybridDeque<>();
+    for (int i = 0; i < elements; i++) {
+      reference.offerLast(element.apply(i));
+    }
+    start = System.nanoTime();
+    drain(reference);
+    long referenceNanos = System.nanoTime() - start;
+
+    if (drained != elements) {
+      throw new AssertionError("Drained " + drained + " elements, expected " + elements);
+    }
+    System.out.printf("%-8s %-17s %,7d blocks frozen in %6.1f ms, %,12d bytes encoded,"
+        + " %,12d saved (estimate), heap %,6.1f -> %,6.1f MB%n", label, variant,
+        frozen.frozenBlocks(), freezeNanos / 1e6, frozen.encodedBytes(), frozen.bytesSaved(),
+        heapBefore / 1e6, heapAfter / 1e6);
+    System.out.printf("%-8s %-17s drain %6.1f ms (unfrozen %6.1f ms), %,d blocks decoded,"
+        + " %,d ns per block%n", label, variant, drainNanos / 1e6, referenceNanos / 1e6,
+        thawed.thawedBlocks(), thawed.nanosPerThaw());
+  }
+
+
+  private static long drain(HybridDeque<?> deque) {
+    long count = 0;
+    while (deque.pollFirst() != null) {
+      count++;
+    }
+    return count;
+  }
+
+
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+}
@@ -1,7 +1,28 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.Set;
+import java.util.stream.IntStream;
 
 /**
  * Doubly-linked-list implementation of the java.util.Deque interface. This implementation is more
@@ -12,9 +33,25 @@ import java.util.Objects;
  * 
  * <p>This implementation does not allow null's to be added to the collection. Adding a null will
  * result in a NullPointerException.
+ *
+ * <p>Deques can be saved either through Java serialization or through the compact binary format
+ * written by writeTo and read back by readFrom. The binary format is written and read in chunks of
+ * about 64 KiB, each holding the encoded elements of several whole blocks, so neither side ever
+ * holds more than one chunk in memory or copies the deque as a whole.
+ *
+ * <p>snapshot() returns an immutable view of the current contents in constant time. The view shares
+ * blocks with the deque, and the deque copies a shared block the first time it writes to it, so
+ * the view can be iterated while the deque keeps changing.
+ *
+ * <p>freezeInterior(codec, hotBlocks) encodes blocks away from both ends with a BlockCodec and drops
+ * their element arrays. A frozen block is decoded again the first time a cursor or iterator reaches
+ * it, and freezeStats() reports the bytes saved and the time spent decoding.
+ *
+ * <p>sort(c) sorts the blocks in parallel and merges them in place, without rebuilding the deque,
+ * and binarySearch(key, c) searches a sorted deque block by block.
  * 
  */
-public class HybridDeque<E> extends AbstractDeque<E> {
+public class HybridDeque<E> extends AbstractDeque<E> implements Serializable {
 
   /*
    * IMPLEMENTATION NOTES ----------------------------------
@@ -57,15 +94,78 @@ public class HybridDeque<E> extends AbstractDeque<E> {
    * (Comments above are a lightly modified version of comments in Python's deque implementation:
    * https://github.com/python/cpython/blob/v3.11.2/Modules/_collectionsmodule.c
    * https://docs.python.org/3.11/license.html)
+   *
+   * COPY-ON-WRITE ----------------------------------
+   *
+   * Blocks keep their identity for as long as they are in the deque; copy-on-write only ever
+   * replaces a block's element array. Every snapshot() starts a new epoch, and each block records
+   * the epoch in which its state was last saved. The first time the deque writes to a block in a
+   * later epoch, writable() saves the block's elements, frozen form and next link in the current
+   * Epoch, then gives the block a fresh copy of its array. Arrays captured that way are never
+   * written again.
+   *
+   * Each epoch holds its saved states strongly, and each block keeps a weakly referenced,
+   * epoch-ordered history of them. A snapshot reads a block from the first saved state in its own
+   * epoch or a later one, found by binary search, and reads the block itself if there is none,
+   * since the block has not changed since the snapshot was taken. Older epochs link strongly to
+   * newer ones, but the deque holds only a weak reference to the newest, so saved states stay
+   * reachable exactly as long as some snapshot that might need them. Once no snapshot is left,
+   * writes stop saving anything and cleared history entries are dropped on the next save.
+   *
+   * Snapshots may be read on other threads while the deque changes. A block's state is saved and
+   * its history published before the block is changed, and elements, frozen, next and history
+   * are volatile, so a snapshot reads a block's fields first and then its history: a changed
+   * field is always accompanied by a history entry that the lookup will see. Snapshots never
+   * follow prev links, so changing only prev does not go through writable().
+   *
+   * FROZEN BLOCKS ----------------------------------
+   *
+   * A frozen block has elements == null and keeps its encoded form in frozen. Deque code reads
+   * elements through readable(), which thaws the block first. Freezing and thawing do not change a
+   * block's contents, so both happen in place; snapshots decode a frozen block privately.
    * 
    */
 
+  private static final long serialVersionUID = 1L;
+
+  /*
+   * BINARY FORMAT ----------------------------------
+   *
+   * Header: int STREAM_MAGIC, int block size of the writer, int element count.
+   *
+   * Followed by chunks, first to last, each holding the elements of one or more storage blocks.
+   * Each chunk is: int number of elements in the chunk, int number of payload bytes, then the
+   * bytes produced by the codec for each element, back to back. The codec knows where each of its
+   * elements ends, and the payload length bounds the chunk, so elements carry no length prefix of
+   * their own. Chunks are kept to about 64 KiB unless a single block needs more, so small blocks
+   * do not each pay for a chunk header and a separate read.
+   */
+  private static final int STREAM_MAGIC = 0x48445133; // "HDQ3"
+  private static final int HEADER_BYTES = 12;
+  private static final int CHUNK_HEADER_BYTES = 8;
+  // writeTo collects chunks up to this many bytes before writing them
+  private static final int WRITE_BUFFER_BYTES = 64 * 1024;
+
   private static int BLOCK_SIZE = 4;
   private static int CENTER = (BLOCK_SIZE - 1) / 2;
 
-  private Cursor leftCursor;
-  private Cursor rightCursor;
-  private int size;
+  // The block structure is rebuilt by readObject, so none of it is written by default.
+  private transient Cursor leftCursor;
+  private transient Cursor rightCursor;
+  private transient int size;
+  private transient long epochId;
+  private transient WeakReference<Epoch> epoch;
+
+  // Blocks from first to last as of the last binarySearch. Reused while the end blocks are the
+  // same, since blocks are only ever linked and unlinked at the ends, and dropped whenever a poll
+  // leaves a block so that it never keeps unlinked blocks reachable.
+  private transient List<Block> blockIndex;
+
+  private transient int frozenBlocks;
+  private transient long frozenEncodedBytes;
+  private transient long frozenHeapBytes;
+  private transient long thawedBlocks;
+  private transient long thawNanos;
 
 
   /**
@@ -80,14 +180,48 @@ public class HybridDeque<E> extends AbstractDeque<E> {
   }
 
 
+  /**
+   * Return the number of elements each newly created block can hold. Other block-based structures
+   * in this package use this so they are sized the same way.
+   */
+  static int blockSize() {
+    return BLOCK_SIZE;
+  }
+
+
+  /**
+   * Return the number of distinct blocks reachable from the cursors through prev and next links.
+   * Tests use this to check that drained blocks are unlinked.
+   */
+  int linkedBlocks() {
+    Set<Block> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+    List<Block> pending = new ArrayList<>(List.of(leftCursor.block, rightCursor.block));
+    while (!pending.isEmpty()) {
+      Block block = pending.remove(pending.size() - 1);
+      if (block != null && seen.add(block)) {
+        pending.add(block.prev);
+        pending.add(block.next);
+      }
+    }
+    return seen.size();
+  }
+
+
   /**
    * Doubly linked list node (or block) containing an array with space for multiple elements.
    */
   private class Block {
-    private E[] elements;
-    private Block next;
+    private volatile E[] elements;
+    private volatile Block next;
     private Block prev;
 
+    // Epoch in which this block's state was last saved, or in which it was created.
+    private long saved;
+    private volatile Frozen frozen;
+
+    // Saved states that a snapshot may still need, oldest first. Replaced, never modified.
+    private volatile List<SavedState> history = List.of();
+
     /**
      * Block Constructor.
      *
@@ -99,10 +233,149 @@ public class HybridDeque<E> extends AbstractDeque<E> {
       this.elements = (E[]) (new Object[BLOCK_SIZE]);
       this.next = next;
       this.prev = prev;
+      this.saved = epochId;
+    }
+
+    /**
+     * Constructor for a block that takes over an existing element array, with no neighbours yet.
+     *
+     * @param elements The element array, of length BLOCK_SIZE
+     */
+    private Block(E[] elements) {
+      this.elements = elements;
+      this.saved = epochId;
     }
 
   }
 
+
+  /**
+   * A block's state as a snapshot sees it.
+   */
+  private class BlockState {
+    private final E[] elements;
+    private final Frozen frozen;
+    private final Block next;
+
+    private BlockState(E[] elements, Frozen frozen, Block next) {
+      this.elements = elements;
+      this.frozen = frozen;
+      this.next = next;
+    }
+
+    private E[] elements() {
+      return elements != null ? elements : frozen.decode();
+    }
+  }
+
+
+  /**
+   * The states blocks had when a snapshot was taken, saved as the deque first writes to each of
+   * them afterwards.
+   */
+  private class Epoch {
+    private final long id;
+    private final List<BlockState> saved = new ArrayList<>();
+    private Epoch next;
+
+    private Epoch(long id) {
+      this.id = id;
+    }
+  }
+
+
+  /**
+   * Weak reference from a block to one of its saved states. The state itself is held by the epoch
+   * it was saved in.
+   */
+  private class SavedState extends WeakReference<BlockState> {
+    private final long epoch;
+
+    private SavedState(long epoch, BlockState state) {
+      super(state);
+      this.epoch = epoch;
+    }
+  }
+
+
+  /**
+   * Encoded contents of a frozen block.
+   */
+  private class Frozen {
+    private final byte[] data;
+    private final BlockCodec<E> codec;
+    private final int length;
+    private final long heapBytes;
+
+    private Frozen(byte[] data, BlockCodec<E> codec, int length, long heapBytes) {
+      this.data = data;
+      this.codec = codec;
+      this.length = length;
+      this.heapBytes = heapBytes;
+    }
+
+    /**
+     * Decode into a new element array.
+     */
+    @SuppressWarnings("unchecked")
+    private E[] decode() {
+      E[] elements = (E[]) (new Object[length]);
+      codec.decode(data, Arrays.asList(elements));
+      return elements;
+    }
+  }
+
+
+  /**
+   * Frozen block counters returned by freezeStats().
+   */
+  public static final class FreezeStats {
+    private final int frozenBlocks;
+    private final long encodedBytes;
+    private final long bytesSaved;
+    private final long thawedBlocks;
+    private final long thawNanos;
+
+    private FreezeStats(int frozenBlocks, long encodedBytes, long bytesSaved, long thawedBlocks,
+        long thawNanos) {
+      this.frozenBlocks = frozenBlocks;
+      this.encodedBytes = encodedBytes;
+      this.bytesSaved = bytesSaved;
+      this.thawedBlocks = thawedBlocks;
+      this.thawNanos = thawNanos;
+    }
+
+    /** Number of blocks that are frozen now. */
+    public int frozenBlocks() {
+      return frozenBlocks;
+    }
+
+    /** Total size of the encoded form of the blocks that are frozen now. */
+    public long encodedBytes() {
+      return encodedBytes;
+    }
+
+    /** Codec estimate of the heap bytes the frozen blocks would hold, minus encodedBytes. */
+    public long bytesSaved() {
+      return bytesSaved;
+    }
+
+    /** Number of blocks decoded since the deque was created. */
+    public long thawedBlocks() {
+      return thawedBlocks;
+    }
+
+    /** Total time spent decoding blocks since the deque was created. */
+    public long thawNanos() {
+      return thawNanos;
+    }
+
+    /** Average decode time per block, or 0 if no block has been decoded. */
+    public long nanosPerThaw() {
+      return thawedBlocks == 0 ? 0 : thawNanos / thawedBlocks;
+    }
+  }
+
   /**
    * Many of the complications of implementing this Deque class are related to the fact that there
    * are two pieces of information that need to be maintained to track a position in the deque: a
@@ -160,18 +433,115 @@ public class HybridDeque<E> extends AbstractDeque<E> {
      * Return the element stored at this cursor.
      */
     public E get() {
-      return block.elements[index];
+      return readable(block).elements[index];
     }
 
     /**
      * Set the element at this cursor.
      */
     public void set(E item) {
-      block.elements[index] = item;
+      writable(block).elements[index] = item;
     }
 
   }
 
+
+  /**
+   * Return a block ready to be read, thawing it first if it is frozen.
+   */
+  private Block readable(Block b) {
+    return b.elements != null ? b : thaw(b);
+  }
+
+
+  /**
+   * Return a block ready to be modified, saving its state first if a snapshot may still need it.
+   */
+  private Block writable(Block b) {
+    if (b.saved != epochId) {
+      save(b);
+    }
+    return readable(b);
+  }
+
+
+  /**
+   * Save a block's state in the current epoch and give it its own copy of the element array. If
+   * no snapshot is left, there is nothing to save.
+   */
+  private void save(Block b) {
+    Epoch current = epoch == null ? null : epoch.get();
+    if (current == null) {
+      epoch = null;
+      b.history = List.of();
+    } else {
+      E[] elements = b.elements;
+      BlockState state = new BlockState(elements, b.frozen, b.next);
+      current.saved.add(state);
+
+      List<SavedState> history = new ArrayList<>(b.history.size() + 1);
+      for (SavedState entry : b.history) {
+        if (entry.get() != null) {
+          history.add(entry);
+        }
+      }
+      history.add(new SavedState(current.id, state));
+      b.history = history;
+
+      if (elements != null) {
+        b.elements = elements.clone();
+      }
+    }
+    b.saved = epochId;
+  }
+
+
+  /**
+   * Return the elements of a block without thawing it. Frozen blocks are decoded into a new array
+   * that is not kept.
+   */
+  private E[] elementsOf(Block block) {
+    E[] elements = block.elements;
+    return elements != null ? elements : block.frozen.decode();
+  }
+
+
+  /**
+   * Decode a frozen block in place. The array is published before the encoded form is dropped, so
+   * a snapshot reading the block concurrently always finds one of them.
+   */
+  private Block thaw(Block b) {
+    Frozen frozen = b.frozen;
+    long start = System.nanoTime();
+    E[] elements = frozen.decode();
+    thawNanos += System.nanoTime() - start;
+    thawedBlocks++;
+
+    frozenBlocks--;
+    frozenEncodedBytes -= frozen.data.length;
+    frozenHeapBytes -= frozen.heapBytes;
+
+    b.elements = elements;
+    b.frozen = null;
+    return b;
+  }
+
+
+  /**
+   * Encode a full block with the codec and drop its element array, in place.
+   */
+  private Block freeze(Block b, BlockCodec<E> codec) {
+    List<E> view = Arrays.asList(b.elements);
+    Frozen frozen = new Frozen(codec.encode(view), codec, b.elements.length, codec.heapBytes(view));
+    b.frozen = frozen;
+    b.elements = null;
+
+    frozenBlocks++;
+    frozenEncodedBytes += frozen.data.length;
+    frozenHeapBytes += frozen.heapBytes;
+    return b;
+  }
+
   // ----------------------------------------------------
   // ADD UNIMPLEMENTED DEQUE METHODS HERE.
   // (You Don't need to provide JavaDoc comments for inherited methods. They
@@ -229,6 +599,11 @@ public class HybridDeque<E> extends AbstractDeque<E> {
 
     leftCursor = new Cursor(clearBlock, CENTER + 1);
     rightCursor = new Cursor(clearBlock, CENTER);
+    blockIndex = null;
+
+    frozenBlocks = 0;
+    frozenEncodedBytes = 0;
+    frozenHeapBytes = 0;
   }
 
 
@@ -239,8 +614,9 @@ public class HybridDeque<E> extends AbstractDeque<E> {
     }
 
     if (rightCursor.index == BLOCK_SIZE - 1) {
-      Block newBlock = new Block(rightCursor.block, null);
-      rightCursor.block.next = newBlock;
+      Block last = writable(rightCursor.block);
+      Block newBlock = new Block(last, null);
+      last.next = newBlock;
       rightCursor = new Cursor(newBlock, 0);
     } else {
       rightCursor = rightCursor.next();
@@ -261,8 +637,9 @@ public class HybridDeque<E> extends AbstractDeque<E> {
     }
 
     if (leftCursor.index == 0) {
-      Block newBlock = new Block(null, leftCursor.block);
-      leftCursor.block.prev = newBlock;
+      Block first = leftCursor.block;
+      Block newBlock = new Block(null, first);
+      first.prev = newBlock;
       leftCursor = new Cursor(newBlock, BLOCK_SIZE - 1);
     } else {
       leftCursor = leftCursor.prev();
@@ -276,6 +653,65 @@ public class HybridDeque<E> extends AbstractDeque<E> {
   }
 
 
+  /**
+   * Copy as many of the first count elements of a batch as fit into the free slots at the end of
+   * the last block. Once this has copied fewer than count elements, the last block is full, so
+   * offerBlockLast can link the rest as a block of its own. Nothing is copied into an empty deque.
+   *
+   * @param batch The elements, starting at index 0
+   * @param count The number of elements available
+   * @return The number of elements copied
+   */
+  int fillLastBlock(E[] batch, int count) {
+    if (size == 0) {
+      return 0;
+    }
+    int copied = Math.min(count, BLOCK_SIZE - 1 - rightCursor.index);
+    if (copied <= 0) {
+      return 0;
+    }
+    Block last = writable(rightCursor.block);
+    System.arraycopy(batch, 0, last.elements, rightCursor.index + 1, copied);
+    rightCursor = new Cursor(last, rightCursor.index + copied);
+    size += copied;
+    return copied;
+  }
+
+
+  /**
+   * Append the first count elements of a batch, all of which must be non-null, while the rest of
+   * the array must be null. When the array is exactly one block long and the last block is full,
+   * or the deque is empty, the array itself is linked in as the new last block without copying.
+   * Callers keep the deque in that state by calling fillLastBlock first; if they do not, the
+   * elements are offered one at a time. Either way the caller must not use the array afterwards.
+   *
+   * @param batch The elements, starting at index 0
+   * @param count The number of elements to append
+   */
+  void offerBlockLast(E[] batch, int count) {
+    if (count == 0) {
+      return;
+    }
+    if (batch.length != BLOCK_SIZE || (size > 0 && rightCursor.index != BLOCK_SIZE - 1)) {
+      for (int i = 0; i < count; i++) {
+        offerLast(batch[i]);
+      }
+      return;
+    }
+
+    Block newBlock = new Block(batch);
+    if (size == 0) {
+      leftCursor = new Cursor(newBlock, 0);
+    } else {
+      Block last = writable(rightCursor.block);
+      newBlock.prev = last;
+      last.next = newBlock;
+    }
+    rightCursor = new Cursor(newBlock, count - 1);
+    size += count;
+  }
+
+
   @Override
   public E pollFirst() {
     if (size == 0) {
@@ -285,7 +721,15 @@ public class HybridDeque<E> extends AbstractDeque<E> {
     size--;
     E e = leftCursor.get();
     leftCursor.set(null);
-    leftCursor = leftCursor.next();
+    if (size == 0) {
+      recenter();
+    } else {
+      leftCursor = leftCursor.next();
+      if (leftCursor.index == 0) { // Let the block we just left be collected
+        leftCursor.block.prev = null;
+        blockIndex = null;
+      }
+    }
     return e;
   }
 
@@ -300,12 +744,32 @@ public class HybridDeque<E> extends AbstractDeque<E> {
 
     E e = rightCursor.get();
     rightCursor.set(null);
-    rightCursor = rightCursor.prev();
+    if (size == 0) {
+      recenter();
+    } else {
+      rightCursor = rightCursor.prev();
+      if (rightCursor.index == BLOCK_SIZE - 1) { // Let the block we just left be collected
+        writable(rightCursor.block).next = null;
+        blockIndex = null;
+      }
+    }
 
     return e;
   }
 
 
+  /**
+   * Move both cursors back to the middle of the current block once the deque is empty, so the
+   * next offer at either end has room without crossing into a neighbouring block.
+   */
+  private void recenter() {
+    Block block = leftCursor.block;
+    leftCursor = new Cursor(block, CENTER + 1);
+    rightCursor = new Cursor(block, CENTER);
+    blockIndex = null;
+  }
+
+
   @Override
   public E peekFirst() {
     if (size == 0) {
@@ -522,4 +986,558 @@ public class HybridDeque<E> extends AbstractDeque<E> {
     return size;
   }
 
+
+  /**
+   * Return an immutable view of the current contents. This takes constant time: the view shares
+   * the deque's blocks, and the deque copies a block only when it next writes to a shared one.
+   *
+   * <p>Like every other method, snapshot() must not run concurrently with changes to the deque.
+   * The returned view, however, can be iterated from any thread while the deque keeps changing,
+   * with no further synchronization, provided it was handed to that thread safely.
+   *
+   * @return A view of the elements as they are now
+   */
+  public Collection<E> snapshot() {
+    Epoch previous = epoch == null ? null : epoch.get();
+    epochId++;
+    Epoch current = new Epoch(epochId);
+    if (previous != null) {
+      previous.next = current;
+    }
+    epoch = new WeakReference<>(current);
+    return new Snapshot(leftCursor.block, leftCursor.index, size, current);
+  }
+
+
+  /**
+   * Immutable view of the deque in one epoch. It reads each block from the state saved for it in
+   * that epoch or a later one, or from the block itself if the deque has not written to it since.
+   */
+  private class Snapshot extends AbstractCollection<E> {
+    private final Block first;
+    private final int firstIndex;
+    private final int size;
+    private final Epoch epoch;
+
+    private Snapshot(Block first, int firstIndex, int size, Epoch epoch) {
+      this.first = first;
+      this.firstIndex = firstIndex;
+      this.size = size;
+      this.epoch = epoch;
+    }
+
+    /**
+     * Return a block's state as of this snapshot. The block's own fields are read before the
+     * saved states, see the implementation notes.
+     */
+    private BlockState stateOf(Block block) {
+      E[] elements;
+      Frozen frozen;
+      do { // A thaw may run between the two reads; it sets elements before clearing frozen
+        elements = block.elements;
+        frozen = block.frozen;
+      } while (elements == null && frozen == null);
+      Block next = block.next;
+      List<SavedState> history = block.history;
+
+      // The first state saved in this snapshot's epoch or later is the block as it was then.
+      int low = 0;
+      int high = history.size();
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (history.get(mid).epoch < epoch.id) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      if (low < history.size()) {
+        BlockState state = history.get(low).get();
+        Reference.reachabilityFence(this); // Keeps epoch, and with it the state, reachable
+        return state;
+      }
+      return new BlockState(elements, frozen, next);
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+      return new Iterator<E>() {
+        private BlockState state = size == 0 ? null : stateOf(first);
+        private E[] elements = size == 0 ? null : state.elements();
+        private int index = firstIndex;
+        private int returned = 0;
+
+        @Override
+        public boolean hasNext() {
+          return returned < size;
+        }
+
+        @Override
+        public E next() {
+          if (!hasNext()) {
+            throw new NoSuchElementException();
+          }
+          if (index == elements.length) {
+            state = stateOf(state.next);
+            elements = state.elements();
+            index = 0;
+          }
+          returned++;
+          return elements[index++];
+        }
+      };
+    }
+  }
+
+
+  /**
+   * Freeze the blocks that are at least hotBlocks blocks away from both ends. Each one is encoded
+   * with the codec and its element array is dropped, until a cursor or iterator reaches it again.
+   * Blocks that are already frozen are left as they are.
+   *
+   * @param codec Used to encode and later decode the blocks
+   * @param hotBlocks Number of blocks at each end to keep unfrozen, at least 1
+   * @return The number of blocks frozen by this call
+   * @throws IllegalArgumentException If hotBlocks is less than 1
+   */
+  public int freezeInterior(BlockCodec<E> codec, int hotBlocks) {
+    if (hotBlocks < 1) {
+      throw new IllegalArgumentException("hotBlocks must be at least 1");
+    }
+
+    Block first = leftCursor.block;
+    Block last = rightCursor.block;
+    int blocks = 1;
+    for (Block b = first; b != last; b = b.next) {
+      blocks++;
+    }
+
+    int count = 0;
+    int position = 0;
+    for (Block b = first; b != last; b = b.next) {
+      if (position >= hotBlocks && position < blocks - hotBlocks && b.elements != null) {
+        b = freeze(b, codec);
+        count++;
+      }
+      position++;
+    }
+    return count;
+  }
+
+
+  /**
+   * Return the current frozen block counters.
+   */
+  public FreezeStats freezeStats() {
+    return new FreezeStats(frozenBlocks, frozenEncodedBytes, frozenHeapBytes - frozenEncodedBytes,
+        thawedBlocks, thawNanos);
+  }
+
+
+  /**
+   * Sort this deque in place. Every block's range of elements is first sorted on its own, in
+   * parallel on the common fork/join pool, into a scratch copy of the blocks. The sorted blocks are
+   * then merged pairwise, with the passes alternating between the blocks and the scratch copy. When
+   * the last pass ends in the scratch copy, its arrays simply become the blocks' element arrays. The
+   * sort is stable. Blocks shared with a snapshot are copied and frozen blocks are thawed first. If
+   * the comparator throws, the deque keeps all of its elements, in an unspecified order.
+   *
+   * @param c The comparator to sort by, or null for natural ordering
+   * @throws ClassCastException If c is null and the elements are not mutually comparable
+   */
+  @SuppressWarnings("unchecked")
+  public void sort(Comparator<? super E> c) {
+    if (size < 2) {
+      return;
+    }
+    Comparator<? super E> comparator = comparator(c);
+    int blockSize = BLOCK_SIZE;
+    int from = leftCursor.index;
+    int to = from + size;
+
+    int blockCount = (to - 1) / blockSize + 1;
+    List<Block> blocks = new ArrayList<>(blockCount);
+    E[][] storage = (E[][]) new Object[blockCount][];
+    Block block = leftCursor.block;
+    for (int i = 0; i < blockCount; i++) {
+      Block b = writable(block);
+      blocks.add(b);
+      storage[i] = b.elements;
+      block = b.next;
+    }
+
+    // Sort copies, so that a comparator failing here leaves the blocks untouched.
+    E[][] sorted = (E[][]) new Object[blockCount][];
+    IntStream.range(0, blockCount).parallel().forEach(i -> {
+      int start = i * blockSize;
+      sorted[i] = storage[i].clone();
+      Arrays.sort(sorted[i], Math.max(from, start) - start, Math.min(to, start + blockSize) - start,
+          comparator);
+    });
+
+    E[][] source = sorted;
+    E[][] target = storage;
+    for (int width = blockSize; width < to; width *= 2) {
+      E[][] src = source;
+      E[][] dst = target;
+      int runWidth = width;
+      int pairs = (to - 1) / (2 * width) + 1;
+      try {
+        IntStream.range(0, pairs).parallel().forEach(i -> {
+          int lo = Math.max(from, i * 2 * runWidth);
+          int mid = Math.max(lo, Math.min(to, (i * 2 + 1) * runWidth));
+          int hi = Math.min(to, (i + 1) * 2 * runWidth);
+          merge(src, dst, blockSize, lo, mid, hi, comparator);
+        });
+      } catch (RuntimeException | Error e) {
+        // A pass never writes its source, so that still holds every element. If the pass was
+        // writing into the blocks' own arrays, the source becomes the blocks' arrays instead.
+        if (dst == storage) {
+          setElements(blocks, src);
+        }
+        throw e;
+      }
+      target = source;
+      source = dst;
+    }
+
+    if (source != storage) {
+      setElements(blocks, source);
+    }
+  }
+
+
+  /**
+   * Make each array the element array of the block at the same index.
+   */
+  private void setElements(List<Block> blocks, E[][] elements) {
+    for (int i = 0; i < elements.length; i++) {
+      blocks.get(i).elements = elements[i];
+    }
+  }
+
+
+  /**
+   * Search this deque, which must already be sorted by the comparator, for an element. Finding the
+   * right block takes a binary search over an index of the blocks that compares only the last
+   * element of each block; a second binary search then runs inside that block. The index is built
+   * by one walk over the block links and reused by later searches until blocks are added or
+   * removed. Frozen blocks are thawed as the searches reach them.
+   *
+   * @param key The element to search for
+   * @param c The comparator the deque is sorted by, or null for natural ordering
+   * @return The position of an element equal to key counted from the first element, or if there is
+   *         none, (-(insertion point) - 1), as in Collections.binarySearch
+   * @throws ClassCastException If c is null and the elements are not mutually comparable
+   */
+  public int binarySearch(E key, Comparator<? super E> c) {
+    if (size == 0) {
+      return -1;
+    }
+    Comparator<? super E> comparator = comparator(c);
+    int from = leftCursor.index;
+    int to = from + size;
+
+    int blockCount = (to - 1) / BLOCK_SIZE + 1;
+    List<Block> blocks = blockIndex;
+    if (blocks == null || blocks.size() != blockCount || blocks.get(0) != leftCursor.block
+        || blocks.get(blockCount - 1) != rightCursor.block) {
+      blocks = new ArrayList<>(blockCount);
+      Block block = leftCursor.block;
+      for (int i = 0; i < blockCount; i++) {
+        blocks.add(block);
+        block = block.next;
+      }
+      blockIndex = blocks;
+    }
+
+    // Find the first block whose last element is not smaller than key.
+    int low = 0;
+    int high = blockCount - 1;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (comparator.compare(readable(blocks.get(mid)).elements[BLOCK_SIZE - 1], key) < 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+
+    int start = low * BLOCK_SIZE;
+    E[] elements = readable(blocks.get(low)).elements;
+    int found = Arrays.binarySearch(elements, Math.max(from, start) - start,
+        Math.min(to, start + BLOCK_SIZE) - start, key, comparator);
+    return found >= 0 ? start + found - from : -(start - found - 1 - from) - 1;
+  }
+
+
+  /**
+   * Merge the sorted runs [lo, mid) and [mid, hi) of src into the same positions of dst. Positions
+   * count slots from the start of the first block, and each run is read through its own block and
+   * index so no position has to be divided.
+   */
+  private static <E> void merge(E[][] src, E[][] dst, int blockSize, int lo, int mid, int hi,
+      Comparator<? super E> comparator) {
+    int leftBlock = lo / blockSize;
+    int leftIndex = lo % blockSize;
+    int rightBlock = mid / blockSize;
+    int rightIndex = mid % blockSize;
+    int outBlock = leftBlock;
+    int outIndex = leftIndex;
+    int leftCount = mid - lo;
+    int rightCount = hi - mid;
+
+    while (leftCount > 0 || rightCount > 0) {
+      E e;
+      if (rightCount == 0 || leftCount > 0
+          && comparator.compare(src[leftBlock][leftIndex], src[rightBlock][rightIndex]) <= 0) {
+        e = src[leftBlock][leftIndex];
+        leftCount--;
+        if (++leftIndex == blockSize) {
+          leftBlock++;
+          leftIndex = 0;
+        }
+      } else {
+        e = src[rightBlock][rightIndex];
+        rightCount--;
+        if (++rightIndex == blockSize) {
+          rightBlock++;
+          rightIndex = 0;
+        }
+      }
+      dst[outBlock][outIndex] = e;
+      if (++outIndex == blockSize) {
+        outBlock++;
+        outIndex = 0;
+      }
+    }
+  }
+
+
+  @SuppressWarnings("unchecked")
+  private static <E> Comparator<? super E> comparator(Comparator<? super E> c) {
+    if (c != null) {
+      return c;
+    }
+    return (a, b) -> ((Comparable<? super E>) a).compareTo(b);
+  }
+
+
+  /**
+   * Write this deque to the channel in the compact binary format. Elements are encoded one storage
+   * block at a time into a buffer of about 64 KiB, which becomes one chunk and is written whenever
+   * the next block does not fit, so the deque is never copied as a whole.
+   *
+   * @param out The channel to write to
+   * @param codec Used to encode each element
+   * @throws IOException If the channel cannot be written
+   */
+  public void writeTo(WritableByteChannel out, ElementCodec<? super E> codec) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_BYTES);
+    buffer.putInt(STREAM_MAGIC).putInt(BLOCK_SIZE).putInt(size);
+
+    Block block = leftCursor.block;
+    int from = leftCursor.index;
+    int remaining = size;
+    int chunk = -1; // Buffer position of the open chunk's header, if there is one
+    int chunkCount = 0;
+    while (remaining > 0) {
+      int count = Math.min(BLOCK_SIZE - from, remaining);
+      E[] elements = elementsOf(block);
+
+      int payload = 0;
+      for (int i = from; i < from + count; i++) {
+        payload += codec.encodedSize(elements[i]);
+      }
+      if (chunk >= 0 && buffer.remaining() < payload) {
+        endChunk(buffer, chunk, chunkCount);
+        chunk = -1;
+      }
+      if (chunk < 0) {
+        if (buffer.remaining() < CHUNK_HEADER_BYTES + payload) {
+          buffer.flip();
+          writeFully(out, buffer);
+          if (buffer.capacity() < CHUNK_HEADER_BYTES + payload) {
+            buffer = ByteBuffer.allocate(CHUNK_HEADER_BYTES + payload);
+          }
+          buffer.clear();
+        }
+        chunk = buffer.position();
+        chunkCount = 0;
+        buffer.position(chunk + CHUNK_HEADER_BYTES);
+      }
+
+      for (int i = from; i < from + count; i++) {
+        codec.encode(elements[i], buffer);
+      }
+      chunkCount += count;
+
+      remaining -= count;
+      block = block.next;
+      from = 0;
+    }
+    if (chunk >= 0) {
+      endChunk(buffer, chunk, chunkCount);
+    }
+    buffer.flip();
+    writeFully(out, buffer);
+  }
+
+
+  /**
+   * Fill in the header of the chunk that starts at the given buffer position and ends at the
+   * buffer's current position.
+   */
+  private static void endChunk(ByteBuffer buffer, int chunk, int count) {
+    buffer.putInt(chunk, count);
+    buffer.putInt(chunk + Integer.BYTES, buffer.position() - chunk - CHUNK_HEADER_BYTES);
+  }
+
+
+  /**
+   * Read a deque that was written by writeTo. The stream is consumed one chunk at a time, and
+   * decoded elements are gathered into whole blocks that are linked into the new deque as they
+   * fill up. Nothing is read past the end of the deque's data.
+   *
+   * @param in The channel to read from
+   * @param codec Used to decode each element
+   * @return A new deque holding the elements in their original order
+   * @throws IOException If the channel cannot be read or does not hold a valid deque
+   */
+  public static <E> HybridDeque<E> readFrom(ReadableByteChannel in, ElementCodec<? extends E> codec)
+      throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES);
+    readFully(in, buffer);
+    if (buffer.getInt() != STREAM_MAGIC) {
+      throw new IOException("Not a HybridDeque stream");
+    }
+    int writerBlockSize = buffer.getInt();
+    int remaining = buffer.getInt();
+    if (writerBlockSize <= 0 || remaining < 0) {
+      throw new IOException("Corrupt HybridDeque header");
+    }
+
+    HybridDeque<E> deque = new HybridDeque<>();
+    // Decoded elements are collected into whole blocks, which are linked in without copying.
+    E[] block = newBlockArray();
+    int filled = 0;
+    ByteBuffer chunkHeader = ByteBuffer.allocate(CHUNK_HEADER_BYTES);
+    while (remaining > 0) {
+      chunkHeader.clear();
+      readFully(in, chunkHeader);
+      int count = chunkHeader.getInt();
+      int payload = chunkHeader.getInt();
+      if (count <= 0 || count > remaining || payload < 0) {
+        throw new IOException("Corrupt HybridDeque chunk");
+      }
+
+      if (buffer.capacity() < payload) {
+        buffer = ByteBuffer.allocate(payload);
+      }
+      buffer.clear().limit(payload);
+      readFully(in, buffer);
+
+      for (int i = 0; i < count; i++) {
+        E e;
+        try {
+          e = codec.decode(buffer);
+        } catch (BufferUnderflowException bue) {
+          throw new IOException("Corrupt HybridDeque chunk", bue);
+        }
+        if (e == null) {
+          throw new IOException("Codec decoded a null element");
+        }
+        block[filled++] = e;
+        if (filled == block.length) {
+          deque.offerBlockLast(block, filled);
+          block = newBlockArray();
+          filled = 0;
+        }
+      }
+      if (buffer.hasRemaining()) {
+        throw new IOException("Corrupt HybridDeque chunk");
+      }
+      remaining -= count;
+    }
+    deque.offerBlockLast(block, filled);
+    return deque;
+  }
+
+
+  @SuppressWarnings("unchecked")
+  private static <E> E[] newBlockArray() {
+    return (E[]) new Object[BLOCK_SIZE];
+  }
+
+
+  private static void writeFully(WritableByteChannel out, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      out.write(buffer);
+    }
+  }
+
+
+  /**
+   * Fill the buffer up to its limit and flip it for reading.
+   */
+  private static void readFully(ReadableByteChannel in, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (in.read(buffer) < 0) {
+        throw new EOFException("HybridDeque stream ended early");
+      }
+    }
+    buffer.flip();
+  }
+
+
+  /**
+   * Save the element count followed by every element, first to last. Frozen blocks are decoded
+   * privately, as in writeTo, so saving a deque never thaws it.
+   */
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    out.defaultWriteObject();
+    out.writeInt(size);
+
+    Block block = leftCursor.block;
+    int from = leftCursor.index;
+    int remaining = size;
+    while (remaining > 0) {
+      int count = Math.min(BLOCK_SIZE - from, remaining);
+      E[] elements = elementsOf(block);
+      for (int i = from; i < from + count; i++) {
+        out.writeObject(elements[i]);
+      }
+      remaining -= count;
+      block = block.next;
+      from = 0;
+    }
+  }
+
+
+  /**
+   * Rebuild the block structure from the elements written by writeObject.
+   */
+  @SuppressWarnings("unchecked")
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    int count = in.readInt();
+    if (count < 0) {
+      throw new InvalidObjectException("Negative size: " + count);
+    }
+
+    clear();
+    for (int i = 0; i < count; i++) {
+      Object e = in.readObject();
+      if (e == null) {
+        throw new InvalidObjectException("Null element");
+      }
+      offerLast((E) e);
+    }
+  }
+
 }
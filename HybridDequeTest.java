@@ -2,9 +2,28 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.ref.WeakReference;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import org.junit.jupiter.api.Test;
 
 class HybridDequeTest {
@@ -123,6 +142,56 @@ class HybridDequeTest {
 
 
 
+  }
+
+  @Test
+  void testEmptiedDequeRecenters() {
+    HybridDeque.setBlockSize(4);
+    // Empty the deque after crossing 0, 1, 2, ... block boundaries, from either end.
+    for (int n = 1; n <= 12; n++) {
+      for (boolean fromFirst : new boolean[] {true, false}) {
+        HybridDeque<Integer> deque = new HybridDeque<>();
+        for (int i = 0; i < n; i++) {
+          deque.offerLast(i);
+        }
+        for (int i = 0; i < n; i++) {
+          assertEquals(fromFirst ? i : n - 1 - i, fromFirst ? deque.pollFirst() : deque.pollLast());
+        }
+        assertNull(deque.peekFirst());
+        assertNull(deque.peekLast());
+
+        deque.offerFirst(-1);
+        deque.offerLast(100);
+        deque.offerFirst(-2);
+        assertEquals(3, deque.size());
+        assertEquals(-2, deque.peekFirst());
+        assertEquals(100, deque.peekLast());
+        assertEquals(List.of(-2, -1, 100), new ArrayList<>(deque));
+      }
+    }
+  }
+
+  @Test
+  void testDrainedBlocksAreUnlinked() {
+    HybridDeque.setBlockSize(4);
+    HybridDeque<Integer> deque = new HybridDeque<>();
+    for (int i = 0; i < 10; i++) {
+      deque.offerLast(i);
+    }
+    // A long FIFO run keeps only the blocks that still hold elements, plus one at most.
+    for (int i = 10; i < 10000; i++) {
+      deque.offerLast(i);
+      assertEquals(i - 10, deque.pollFirst());
+      assertTrue(deque.linkedBlocks() <= 5);
+    }
+    // Same for a LIFO run that shrinks the deque from the back.
+    for (int i = 0; i < 1000; i++) {
+      deque.offerLast(i);
+    }
+    for (int i = 999; i >= 0; i--) {
+      assertEquals(i, deque.pollLast());
+    }
+    assertTrue(deque.linkedBlocks() <= 5);
   }
 
   @Test
@@ -384,6 +453,535 @@ class HybridDequeTest {
 
 
   }
-}
 
+  @Test
+  void testWriteToReadFrom() throws IOException {
+    HybridDeque<Integer> deque = new HybridDeque<>();
+    for (int i = 0; i < 20; i++) {
+      deque.offerLast(i);
+      deque.offerFirst(-i);
+    }
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    deque.writeTo(Channels.newChannel(bytes), TestCodecs.INT);
+    HybridDeque<Integer> copy = HybridDeque.readFrom(
+        Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())), TestCodecs.INT);
+
+    assertEquals(40, copy.size());
+    assertEquals(true, deque.equals(copy));
+  }
+
+  @Test
+  void testWriteToReadFromEmpty() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    new HybridDeque<Integer>().writeTo(Channels.newChannel(bytes), TestCodecs.INT);
+    HybridDeque<Integer> copy = HybridDeque.readFrom(
+        Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())), TestCodecs.INT);
+    assertEquals(0, copy.size());
+  }
+
+  @Test
+  void testWriteToIsCompact() throws IOException {
+    HybridDeque.setBlockSize(4);
+    HybridDeque<Integer> deque = new HybridDeque<>();
+    for (int i = 0; i < 10; i++) {
+      deque.offerLast(i);
+    }
+
+    // Header, then a single chunk for all three blocks, holding 4 bytes per element.
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    deque.writeTo(Channels.newChannel(bytes), TestCodecs.INT);
+    assertEquals(12 + 8 + 10 * 4, bytes.size());
+
+    byte[] trailing = Arrays.copyOf(bytes.toByteArray(), bytes.size());
+    trailing[12 + 7] = 36; // The chunk claims one element's worth of bytes too few
+    assertThrows(IOException.class, () -> {
+      HybridDeque.readFrom(Channels.newChannel(new ByteArrayInputStream(trailing)), TestCodecs.INT);
+    });
+  }
+
+  @Test
+  void testWriteToReadFromManyChunks() throws IOException {
+    HybridDeque.setBlockSize(4);
+    HybridDeque<Integer> deque = new HybridDeque<>();
+    for (int i = 0; i < 50000; i++) {
+      deque.offerLast(i);
+    }
+    deque.pollFirst();
+
+    // More than one chunk's worth, followed by data that is not part of the deque.
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    deque.writeTo(Channels.newChannel(bytes), TestCodecs.INT);
+    bytes.write(new byte[] {1, 2, 3});
+    ByteArrayInputStream in = new ByteArrayInputStream(bytes.toByteArray());
+    HybridDeque<Integer> copy = HybridDeque.readFrom(Channels.newChannel(in), TestCodecs.INT);
+
+    assertEquals(true, deque.equals(copy));
+    assertEquals(3, in.available());
+    copy.offerLast(50000);
+    copy.offerFirst(0);
+    assertEquals(50001, copy.size());
+    assertEquals(50000, copy.pollLast());
+  }
+
+  @Test
+  void testReadFromCorrupt() throws IOException {
+    HybridDeque<Integer> deque = new HybridDeque<>();
+    deque.offerLast(1);
+    deque.offerLast(2);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    deque.writeTo(Channels.newChannel(bytes), TestCodecs.INT);
+    byte[] data = bytes.toByteArray();
+
+    byte[] badMagic = data.clone();
+    badMagic[0] = 0;
+    assertThrows(IOException.class, () -> {
+      HybridDeque.readFrom(Channels.newChannel(new ByteArrayInputStream(badMagic)), TestCodecs.INT);
+    });
+
+    byte[] truncated = Arrays.copyOf(data, data.length - 1);
+    assertThrows(IOException.class, () -> {
+      HybridDeque.readFrom(Channels.newChannel(new ByteArrayInputStream(truncated)), TestCodecs.INT);
+    });
+  }
+
+  @Test
+  void testSerializable() throws IOException, ClassNotFoundException {
+    HybridDeque<String> deque = new HybridDeque<>();
+    for (int i = 0; i < 10; i++) {
+      deque.offerLast("e" + i);
+    }
+    deque.pollFirst();
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(deque);
+    }
+    HybridDeque<?> copy;
+    try (ObjectInputStream in =
+        new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      copy = (HybridDeque<?>) in.readObject();
+    }
 
+    assertEquals(9, copy.size());
+    assertEquals("e1", copy.peekFirst());
+    assertEquals("e9", copy.peekLast());
+    assertEquals(true, deque.equals(copy));
+  }
+
+  @Test
+  void testSerializableKeepsBlocksFrozen() throws IOException, ClassNotFoundException {
+    HybridDeque.setBlockSize(4);
+    HybridDeque<Long> deque = new HybridDeque<>();
+    for (long i = 0; i < 40; i++) {
+      deque.offerLast(i);
+    }
+    int frozen = deque.freezeInterior(BlockCodecs.deltaVarint(), 1);
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(deque);
+    }
+    assertEquals(frozen, deque.freezeStats().frozenBlocks());
+    assertEquals(0, deque.freezeStats().thawedBlocks());
+
+    HybridDeque<?> copy;
+    try (ObjectInputStream in =
+        new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      copy = (HybridDeque<?>) in.readObject();
+    }
+    assertEquals(true, copy.equals(deque));
+  }
+
+  @Test
+  void testSnapshot() {
+    HybridDeque.setBlockSize(4);
+    HybridDeque<Integer> deque = new HybridDeque<>();
+    for (int i = 0; i < 10; i++) {
+      deque.offerLast(i);
+    }
+    Collection<Integer> snapshot = deque.snapshot();
+
+    deque.pollFirst();
+    deque.pollLast();
+    deque.offerFirst(100);
+    deque.offerLast(200);
+    deque.removeFirstOccurrence(5);
+
+    assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), new ArrayList<>(snapshot));
+    assertEquals(10, snapshot.size());
+    assertEquals(Arrays.asList(100, 1, 2, 3, 4, 6, 7, 8, 200), new ArrayList<>(deque));
+    assertThrows(UnsupportedOperationException.class, () -> {
+      snapshot.add(1);
+    });
+  }
+
+  @Test
+  void testSnapshotVersions() {
+    HybridDeque.setBlockSize(4);
+    HybridDeque<Integer> deque = new HybridDeque<>();
+    List<List<Integer>> expected = new ArrayList<>();
+    List<Collection<Integer>> snapshots = new ArrayList<>();
+
+    for (int i = 0; i < 50; i++) {
+      if (i % 3 == 0) {
+        deque.pollLast();
+      }
+      if (i % 4 == 0) {
+        deque.pollFirst();
+      }
+      deque.offerLast(i);
+      deque.offerFirst(-i);
+      expected.add(new ArrayList<>(deque));
+      snapshots.add(deque.snapshot());
+    }
+
+    for (int i = 0; i < snapshots.size(); i++) {
+      assertEquals(expected.get(i), new ArrayList<>(snapshots.get(i)));
+    }
+    assertEquals(expected.get(expected.size() - 1), new ArrayList<>(deque));
+  }
+
+  @Test
+  void testSnapshotEmpty() {
+    HybridDeque<Integer> deque = new HybridDeque<>();
+    Collection<Integer> snapshot = deque.snapshot();
+    deque.offerLast(1);
+    assertEquals(0, snapshot.size());
+    assertFalse(snapshot.iterator().hasNext());
+  }
+
+  /**
+   * Return true once the referent has been collected, giving the collector a few chances.
+   */
+  private static boolean collected(WeakReference<?> reference) throws InterruptedException {
+    for (int i = 0; i < 20 && reference.get() != null; i++) {
+      System.gc();
+      Thread.sleep(10);
+    }
+    return reference.get() == null;
+  }
+
+  @Test
+  void testDiscardedSnapshotsRetainNothing() throws InterruptedException {
+    HybridDeque.setBlockSize(4);
+    HybridDeque<Object> deque = new HybridDeque<>();
+    for (int i = 0; i < 6; i++) {
+      deque.offerLast(i);
+    }
+
+    // A stack used at its right end, with a snapshot before every write. The left block is never
+    // written, so nothing may reach old states of the right block through it.
+    Object firstWritten = new Object();
+    WeakReference<Object> first = new WeakReference<>(firstWritten);
+    deque.snapshot();
+    deque.offerLast(firstWritten);
+    firstWritten = null;
+    deque.pollLast();
+    for (int i = 0; i < 100000; i++) {
+      deque.snapshot();
+      deque.offerLast(i);
+      deque.pollLast();
+    }
+    assertTrue(collected(first));
+
+    // A snapshot that is still held keeps what it needs.
+    Collection<Object> held = deque.snapshot();
+    List<Object> expected = new ArrayList<>(deque);
+    for (int i = 0; i < 1000; i++) {
+      deque.snapshot();
+      deque.pollFirst();
+      deque.offerLast(i);
+    }
+    System.gc();
+    assertEquals(expected, new ArrayList<>(held));
+  }
+
+  @Test
+  void testSnapshotIteratedConcurrently() throws InterruptedException {
+    HybridDeque.setBlockSize(4);
+    HybridDeque<Long> deque = new HybridDeque<>();
+    BlockingQueue<List<Object>> handoff = new ArrayBlockingQueue<>(16);
+    AtomicReference<String> failure = new AtomicReference<>();
+
+    Thread reader = new Thread(() -> {
+      try {
+        List<Object> pair;
+        while (!(pair = handoff.take()).isEmpty()) {
+          // Iterate twice while the writer keeps going; both passes must see the same contents.
+          for (int pass = 0; pass < 2; pass++) {
+            if (!pair.get(1).equals(new ArrayList<>((Collection<?>) pair.get(0)))) {
+              failure.compareAndSet(null, "Snapshot changed while the deque was written");
+            }
+          }
+        }
+      } catch (InterruptedException ie) {
+        failure.compareAndSet(null, "Reader interrupted");
+      }
+    });
+    reader.start();
+
+    Random random = new Random(11);
+    for (int i = 0; i < 20000; i++) {
+      int op = random.nextInt(10);
+      if (op < 4) {
+        deque.offerLast((long) i);
+      } else if (op < 6) {
+        deque.offerFirst((long) i);
+      } else if (op < 8) {
+        deque.pollFirst();
+      } else if (op < 9) {
+        deque.pollLast();
+      } else {
+        deque.freezeInterior(BlockCodecs.deltaVarint(), 1);
+      }
+      if (i % 50 == 0) {
+        handoff.put(List.of(deque.snapshot(), new ArrayList<>(deque)));
+      }
+    }
+    handoff.put(List.of());
+    reader.join();
+    assertNull(failure.get());
+  }
+
+  @Test
+  void testFreezeInterior() {
+    HybridDeque.setBlockSize(4);
+    HybridDeque<Long> deque = new HybridDeque<>();
+    for (long i = 0; i < 40; i++) {
+      deque.offerLast(1_000_000L + i);
+    }
+    List<Long> expected = new ArrayList<>(deque);
+
+    assertThrows(IllegalArgumentException.class, () -> {
+      deque.freezeInterior(BlockCodecs.deltaVarint(), 0);
+    });
+    int frozen = deque.freezeInterior(BlockCodecs.deltaVarint(), 2);
+    assertEquals(true, frozen > 0);
+    assertEquals(0, deque.freezeInterior(BlockCodecs.deltaVarint(), 2));
+
+    HybridDeque.FreezeStats stats = deque.freezeStats();
+    assertEquals(frozen, stats.frozenBlocks());
+    assertEquals(true, stats.bytesSaved() > 0);
+    assertEquals(0, stats.thawedBlocks());
+
+    // Reading every element thaws every frozen block.
+    assertEquals(expected, new ArrayList<>(deque));
+    stats = deque.freezeStats();
+    assertEquals(0, stats.frozenBlocks());
+    assertEquals(0, stats.encodedBytes());
+    assertEquals(frozen, stats.thawedBlocks());
+  }
+
+  @Test
+  void testFrozenBlocksDrain() throws IOException {
+    HybridDeque.setBlockSize(4);
+    HybridDeque<String> deque = new HybridDeque<>();
+    for (int i = 0; i < 50; i++) {
+      deque.offerLast(i % 3 == 0 ? "fizz" : "buzz");
+    }
+    deque.freezeInterior(BlockCodecs.dictionary(), 1);
+    Collection<String> snapshot = deque.snapshot();
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    deque.writeTo(Channels.newChannel(bytes), TestCodecs.STRING);
+    assertEquals(true, deque.freezeStats().frozenBlocks() > 0);
+    HybridDeque<String> read = HybridDeque.readFrom(
+        Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())), TestCodecs.STRING);
+    assertEquals(new ArrayList<>(deque), new ArrayList<>(read));
+
+    for (int i = 0; i < 50; i++) {
+      assertEquals(i % 3 == 0 ? "fizz" : "buzz", deque.pollFirst());
+    }
+    assertEquals(0, deque.freezeStats().frozenBlocks());
+    assertEquals(50, new ArrayList<>(snapshot).size());
+    assertEquals("fizz", new ArrayList<>(snapshot).get(48));
+  }
+
+  @Test
+  void testOfferBlockLast() {
+    HybridDeque.setBlockSize(4);
+    HybridDeque<Integer> deque = new HybridDeque<>();
+    deque.offerBlockLast(new Integer[] {0, 1, 2, 3}, 4);
+    deque.offerBlockLast(new Integer[] {4, 5, null, null}, 2);
+    deque.offerBlockLast(new Integer[] {6, 7, 8, 9}, 4);
+    Collection<Integer> snapshot = deque.snapshot();
+    deque.offerBlockLast(new Integer[] {10, 11}, 2);
+    deque.offerBlockLast(new Integer[4], 0);
+    deque.offerFirst(-1);
+
+    List<Integer> expected = new ArrayList<>();
+    for (int i = -1; i < 12; i++) {
+      expected.add(i);
+    }
+    assertEquals(expected, new ArrayList<>(deque));
+    assertEquals(expected.subList(1, 11), new ArrayList<>(snapshot));
+
+    for (int i = 11; i >= 0; i--) {
+      assertEquals(i, deque.pollLast());
+    }
+    assertEquals(-1, deque.pollLast());
+    deque.offerBlockLast(new Integer[] {20, 21, 22, 23}, 4);
+    deque.offerLast(24);
+    assertEquals(Arrays.asList(20, 21, 22, 23, 24), new ArrayList<>(deque));
+  }
+
+  @Test
+  void testFillLastBlock() {
+    HybridDeque.setBlockSize(4);
+    HybridDeque<Integer> deque = new HybridDeque<>();
+    assertEquals(0, deque.fillLastBlock(new Integer[] {0, 1, 2, 3}, 4));
+    assertEquals(0, deque.size());
+
+    deque.offerBlockLast(new Integer[] {0, null, null, null}, 1);
+    Collection<Integer> snapshot = deque.snapshot();
+    Integer[] batch = {1, 2, 3, 4};
+    assertEquals(3, deque.fillLastBlock(batch, 4));
+    assertEquals(0, deque.fillLastBlock(new Integer[] {4}, 1));
+    assertEquals(4, deque.size());
+
+    // The last block is full, so the next block is linked without copying.
+    Integer[] block = {4, 5, 6, 7};
+    deque.offerBlockLast(block, 4);
+    block[3] = 70;
+    assertEquals(70, deque.peekLast());
+    assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 70), new ArrayList<>(deque));
+    assertEquals(Arrays.asList(0), new ArrayList<>(snapshot));
+  }
+
+  @Test
+  void testSort() {
+    for (int blockSize : new int[] {4, 64}) {
+      HybridDeque.setBlockSize(blockSize);
+      Random random = new Random(blockSize);
+      for (int n : new int[] {0, 1, 3, 17, 1000}) {
+        HybridDeque<Long> deque = new HybridDeque<>();
+        List<Long> expected = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+          long e = random.nextInt(100) * 1000L + i;
+          if (random.nextBoolean()) {
+            deque.offerLast(e);
+            expected.add(e);
+          } else {
+            deque.offerFirst(e);
+            expected.add(0, e);
+          }
+        }
+        deque.freezeInterior(BlockCodecs.deltaVarint(), 1);
+        Collection<Long> snapshot = deque.snapshot();
+
+        // Comparing by the high part only leaves ties, which must keep their order.
+        Comparator<Long> byHigh = Comparator.comparing(e -> e / 1000);
+        deque.sort(byHigh);
+        List<Long> unsorted = new ArrayList<>(expected);
+        expected.sort(byHigh);
+        assertEquals(expected, new ArrayList<>(deque));
+        assertEquals(unsorted, new ArrayList<>(snapshot));
+
+        deque.sort(null);
+        Collections.sort(expected);
+        assertEquals(expected, new ArrayList<>(deque));
+      }
+    }
+  }
+
+  @Test
+  void testSortKeepsElementsWhenComparatorThrows() {
+    HybridDeque.setBlockSize(4);
+    List<Integer> values = new ArrayList<>();
+    for (int i = 0; i < 64; i++) {
+      values.add(i);
+    }
+    Collections.shuffle(values, new Random(1));
+
+    HybridDeque<Integer> counted = new HybridDeque<>();
+    for (Integer e : values) {
+      counted.offerLast(e);
+    }
+    AtomicInteger total = new AtomicInteger();
+    counted.sort((a, b) -> {
+      total.incrementAndGet();
+      return a.compareTo(b);
+    });
+
+    // Fail in the block sorts and in every merge pass.
+    for (int limit = 0; limit < total.get(); limit += 5) {
+      HybridDeque<Integer> deque = new HybridDeque<>();
+      for (Integer e : values) {
+        deque.offerLast(e);
+      }
+      AtomicInteger calls = new AtomicInteger();
+      int failAfter = limit;
+      assertThrows(IllegalStateException.class, () -> {
+        deque.sort((a, b) -> {
+          if (calls.incrementAndGet() > failAfter) {
+            throw new IllegalStateException("Comparator failed");
+          }
+          return a.compareTo(b);
+        });
+      });
+
+      assertEquals(64, deque.size());
+      List<Integer> contents = new ArrayList<>(deque);
+      Collections.sort(contents);
+      List<Integer> expected = new ArrayList<>(values);
+      Collections.sort(expected);
+      assertEquals(expected, contents);
+    }
+  }
+
+  @Test
+  void testBinarySearch() {
+    HybridDeque.setBlockSize(4);
+    HybridDeque<Integer> deque = new HybridDeque<>();
+    assertEquals(-1, deque.binarySearch(5, null));
+
+    List<Integer> list = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      deque.offerLast(i * 2);
+      list.add(i * 2);
+    }
+    deque.pollFirst();
+    list.remove(0);
+    deque.offerFirst(-10);
+    list.add(0, -10);
+
+    for (int key = -12; key < 102; key++) {
+      assertEquals(Collections.binarySearch(list, key), deque.binarySearch(key, null));
+    }
+
+    // Searches stay correct as blocks are added and removed at both ends.
+    Random random = new Random(7);
+    for (int step = 0; step < 200; step++) {
+      switch (random.nextInt(4)) {
+        case 0:
+          deque.offerLast(list.get(list.size() - 1) + 2);
+          list.add(list.get(list.size() - 1) + 2);
+          break;
+        case 1:
+          deque.offerFirst(list.get(0) - 2);
+          list.add(0, list.get(0) - 2);
+          break;
+        case 2:
+          if (list.size() > 1) {
+            assertEquals(list.remove(0), deque.pollFirst());
+          }
+          break;
+        default:
+          if (list.size() > 1) {
+            assertEquals(list.remove(list.size() - 1), deque.pollLast());
+          }
+          break;
+      }
+      int key = list.get(random.nextInt(list.size())) + random.nextInt(3) - 1;
+      assertEquals(Collections.binarySearch(list, key), deque.binarySearch(key, null));
+    }
+
+    Comparator<Integer> reversed = Comparator.reverseOrder();
+    deque.sort(reversed);
+    list.sort(reversed);
+    for (int key = -12; key < 102; key++) {
+      assertEquals(Collections.binarySearch(list, key, reversed), deque.binarySearch(key, reversed));
+    }
+  }
+}
@@ -0,0 +1,157 @@
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Scheduler-style workload for PriorityLaneDeque: a steady backlog of tasks where every step
+ * submits one task with a random priority and runs the highest-priority task, oldest first. It
+ * is compared against a PriorityQueue ordered by priority and submission order, and against
+ * scanning one HybridDeque per priority in order, for several bounded priority ranges.
+ *
+ * <p>Usage: java PriorityLaneBenchmark [operations] [backlog] [rounds]. The defaults are
+ * 10,000,000 operations over a backlog of 10,000 tasks and 3 rounds, after one warm-up round.
+ */
+public class PriorityLaneBenchmark {
+
+  private static final int[] LANE_COUNTS = {4, 16, 64};
+
+
+  private static final class Task {
+    private final int priority;
+    private final long sequence;
+
+    private Task(int priority, long sequence) {
+      this.priority = priority;
+      this.sequence = sequence;
+    }
+  }
+
+
+  /**
+   * The queue operations the workload needs, so that every variant runs the same loop.
+   */
+  private interface Queue {
+    void offer(Task task);
+
+    Task poll();
+  }
+
+
+  public static void main(String[] args) {
+    int operations = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+    int backlog = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+    int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+    for (int lanes : LANE_COUNTS) {
+      int[] priorities = new int[operations + backlog];
+      Random random = new Random(lanes);
+      for (int i = 0; i < priorities.length; i++) {
+        priorities[i] = random.nextInt(lanes);
+      }
+
+      for (int round = 0; round <= rounds; round++) {
+        String label = round == 0 ? "warm-up" : "round " + round;
+        report(label, lanes, "PriorityLaneDeque", operations,
+            run(laneDeque(lanes), priorities, backlog));
+        report(label, lanes, "PriorityQueue", operations,
+            run(priorityQueue(), priorities, backlog));
+        report(label, lanes, "scanned lanes", operations,
+            run(scannedLanes(lanes), priorities, backlog));
+      }
+    }
+  }
+
+
+  private static Queue laneDeque(int lanes) {
+    PriorityLaneDeque<Task> deque = new PriorityLaneDeque<>(lanes);
+    return new Queue() {
+      @Override
+      public void offer(Task task) {
+        deque.offerLast(task.priority, task);
+      }
+
+      @Override
+      public Task poll() {
+        return deque.pollFirst();
+      }
+    };
+  }
+
+
+  private static Queue priorityQueue() {
+    PriorityQueue<Task> queue = new PriorityQueue<>((a, b) -> a.priority != b.priority
+        ? Integer.compare(a.priority, b.priority) : Long.compare(a.sequence, b.sequence));
+    return new Queue() {
+      @Override
+      public void offer(Task task) {
+        queue.offer(task);
+      }
+
+      @Override
+      public Task poll() {
+        return queue.poll();
+      }
+    };
+  }
+
+
+  /**
+   * What PriorityLaneDeque replaces: one deque per priority, scanned from the highest priority on
+   * every poll.
+   */
+  private static Queue scannedLanes(int lanes) {
+    @SuppressWarnings("unchecked")
+    HybridDeque<Task>[] deques = (HybridDeque<Task>[]) new HybridDeque<?>[lanes];
+    for (int i = 0; i < lanes; i++) {
+      deques[i] = new HybridDeque<>();
+    }
+    return new Queue() {
+      @Override
+      public void offer(Task task) {
+        deques[task.priority].offerLast(task);
+      }
+
+      @Override
+      public Task poll() {
+        for (HybridDeque<Task> deque : deques) {
+          Task task = deque.pollFirst();
+          if (task != null) {
+            return task;
+          }
+        }
+        return null;
+      }
+    };
+  }
+
+
+  /**
+   * Fill the backlog, then alternate one offer and one poll. Returns the elapsed nanoseconds of
+   * the alternating phase.
+   */
+  private static long run(Queue queue, int[] priorities, int backlog) {
+    long sequence = 0;
+    for (int i = 0; i < backlog; i++) {
+      queue.offer(new Task(priorities[i], sequence++));
+    }
+
+    long checksum = 0;
+    long start = System.nanoTime();
+    for (int i = backlog; i < priorities.length; i++) {
+      queue.offer(new Task(priorities[i], sequence++));
+      checksum += queue.poll().priority;
+    }
+    long elapsed = System.nanoTime() - start;
+    if (checksum < 0) {
+      throw new AssertionError();
+    }
+    return elapsed;
+  }
+
+
+  private static void report(String label, int lanes, String variant, int operations,
+      long nanos) {
+    System.out.printf("%-8s %2d lanes  %-18s %7.1f M offer+poll/s%n", label, lanes, variant,
+        operations * 1e3 / nanos);
+  }
+
+}
@@ -0,0 +1,230 @@
+import java.util.Objects;
+
+/**
+ * A set of HybridDeques, one per priority lane, that can be polled as a single queue. Lane 0 has
+ * the highest priority. Each lane keeps the usual block storage, and a bitmap of non-empty lanes
+ * lets pollFirst find the highest-priority element without scanning the lanes in order.
+ *
+ * <p>Elements can be offered at either end of a lane and polled either from a specific lane or from
+ * whichever non-empty lane has the highest priority. Like HybridDeque, this class does not allow
+ * nulls and is not thread-safe.
+ */
+public class PriorityLaneDeque<E> {
+
+  /** The bitmap is a single long, so this is the largest supported number of lanes. */
+  public static final int MAX_LANES = Long.SIZE;
+
+  private final HybridDeque<E>[] lanes;
+
+  // Bit i is set exactly when lanes[i] is non-empty.
+  private long nonEmpty;
+  private int size;
+
+
+  /**
+   * Create a deque with the given number of priority lanes.
+   *
+   * @param laneCount Number of lanes, between 1 and MAX_LANES
+   * @throws IllegalArgumentException If laneCount is out of range
+   */
+  @SuppressWarnings("unchecked")
+  public PriorityLaneDeque(int laneCount) {
+    if (laneCount < 1 || laneCount > MAX_LANES) {
+      throw new IllegalArgumentException("laneCount must be between 1 and " + MAX_LANES);
+    }
+    lanes = (HybridDeque<E>[]) new HybridDeque<?>[laneCount];
+    for (int i = 0; i < laneCount; i++) {
+      lanes[i] = new HybridDeque<>();
+    }
+  }
+
+
+  /**
+   * Return the number of lanes.
+   */
+  public int laneCount() {
+    return lanes.length;
+  }
+
+
+  /**
+   * Add an element to the end of a lane.
+   *
+   * @param lane The lane index, where 0 is the highest priority
+   * @param e The element to add
+   * @return true
+   * @throws NullPointerException If e is null
+   * @throws IndexOutOfBoundsException If lane is out of range
+   */
+  public boolean offerLast(int lane, E e) {
+    lane(lane).offerLast(e);
+    markNonEmpty(lane);
+    return true;
+  }
+
+
+  /**
+   * Add an element to the front of a lane.
+   *
+   * @param lane The lane index, where 0 is the highest priority
+   * @param e The element to add
+   * @return true
+   * @throws NullPointerException If e is null
+   * @throws IndexOutOfBoundsException If lane is out of range
+   */
+  public boolean offerFirst(int lane, E e) {
+    lane(lane).offerFirst(e);
+    markNonEmpty(lane);
+    return true;
+  }
+
+
+  /**
+   * Remove and return the first element of the highest-priority non-empty lane.
+   *
+   * @return The element, or null if every lane is empty
+   */
+  public E pollFirst() {
+    if (nonEmpty == 0) {
+      return null;
+    }
+    return pollFirst(Long.numberOfTrailingZeros(nonEmpty));
+  }
+
+
+  /**
+   * Return the first element of the highest-priority non-empty lane without removing it.
+   *
+   * @return The element, or null if every lane is empty
+   */
+  public E peekFirst() {
+    if (nonEmpty == 0) {
+      return null;
+    }
+    return lanes[Long.numberOfTrailingZeros(nonEmpty)].peekFirst();
+  }
+
+
+  /**
+   * Return the index of the highest-priority non-empty lane.
+   *
+   * @return The lane index, or -1 if every lane is empty
+   */
+  public int firstNonEmptyLane() {
+    return nonEmpty == 0 ? -1 : Long.numberOfTrailingZeros(nonEmpty);
+  }
+
+
+  /**
+   * Remove and return the first element of a lane.
+   *
+   * @param lane The lane index
+   * @return The element, or null if the lane is empty
+   * @throws IndexOutOfBoundsException If lane is out of range
+   */
+  public E pollFirst(int lane) {
+    E e = lane(lane).pollFirst();
+    if (e != null) {
+      removed(lane);
+    }
+    return e;
+  }
+
+
+  /**
+   * Remove and return the last element of a lane.
+   *
+   * @param lane The lane index
+   * @return The element, or null if the lane is empty
+   * @throws IndexOutOfBoundsException If lane is out of range
+   */
+  public E pollLast(int lane) {
+    E e = lane(lane).pollLast();
+    if (e != null) {
+      removed(lane);
+    }
+    return e;
+  }
+
+
+  /**
+   * Return the first element of a lane without removing it.
+   *
+   * @param lane The lane index
+   * @return The element, or null if the lane is empty
+   * @throws IndexOutOfBoundsException If lane is out of range
+   */
+  public E peekFirst(int lane) {
+    return lane(lane).peekFirst();
+  }
+
+
+  /**
+   * Return the last element of a lane without removing it.
+   *
+   * @param lane The lane index
+   * @return The element, or null if the lane is empty
+   * @throws IndexOutOfBoundsException If lane is out of range
+   */
+  public E peekLast(int lane) {
+    return lane(lane).peekLast();
+  }
+
+
+  /**
+   * Return the number of elements in a lane.
+   *
+   * @param lane The lane index
+   * @throws IndexOutOfBoundsException If lane is out of range
+   */
+  public int size(int lane) {
+    return lane(lane).size();
+  }
+
+
+  /**
+   * Return the total number of elements in all lanes.
+   */
+  public int size() {
+    return size;
+  }
+
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+
+  /**
+   * Remove every element from every lane.
+   */
+  public void clear() {
+    long bits = nonEmpty;
+    while (bits != 0) {
+      lanes[Long.numberOfTrailingZeros(bits)].clear();
+      bits &= bits - 1;
+    }
+    nonEmpty = 0;
+    size = 0;
+  }
+
+
+  private HybridDeque<E> lane(int lane) {
+    return lanes[Objects.checkIndex(lane, lanes.length)];
+  }
+
+
+  private void markNonEmpty(int lane) {
+    nonEmpty |= 1L << lane;
+    size++;
+  }
+
+
+  private void removed(int lane) {
+    size--;
+    if (lanes[lane].size() == 0) {
+      nonEmpty &= ~(1L << lane);
+    }
+  }
+
+}
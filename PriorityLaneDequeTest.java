@@ -0,0 +1,84 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+
+class PriorityLaneDequeTest {
+
+  @Test
+  void testConstructor() {
+    PriorityLaneDeque<Integer> deque = new PriorityLaneDeque<>(3);
+    assertEquals(3, deque.laneCount());
+    assertEquals(0, deque.size());
+    assertEquals(-1, deque.firstNonEmptyLane());
+    assertNull(deque.peekFirst());
+    assertNull(deque.pollFirst());
+
+    assertThrows(IllegalArgumentException.class, () -> {
+      new PriorityLaneDeque<Integer>(0);
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      new PriorityLaneDeque<Integer>(PriorityLaneDeque.MAX_LANES + 1);
+    });
+  }
+
+  @Test
+  void testPollFirstHighestPriority() {
+    PriorityLaneDeque<Integer> deque = new PriorityLaneDeque<>(64);
+    deque.offerLast(63, 630);
+    deque.offerLast(5, 50);
+    deque.offerLast(5, 51);
+    deque.offerFirst(5, 49);
+    deque.offerLast(0, 0);
+    assertEquals(5, deque.size());
+
+    assertEquals(0, deque.pollFirst());
+    assertEquals(5, deque.firstNonEmptyLane());
+    assertEquals(49, deque.peekFirst());
+    assertEquals(49, deque.pollFirst());
+    assertEquals(50, deque.pollFirst());
+    assertEquals(51, deque.pollFirst());
+    assertEquals(630, deque.pollFirst());
+    assertNull(deque.pollFirst());
+    assertEquals(0, deque.size());
+  }
+
+  @Test
+  void testPerLane() {
+    PriorityLaneDeque<Integer> deque = new PriorityLaneDeque<>(2);
+    for (int i = 0; i < 10; i++) {
+      deque.offerLast(1, i);
+    }
+    deque.offerLast(0, 100);
+
+    assertEquals(10, deque.size(1));
+    assertEquals(0, deque.peekFirst(1));
+    assertEquals(9, deque.peekLast(1));
+    assertEquals(9, deque.pollLast(1));
+    assertEquals(0, deque.pollFirst(1));
+    assertEquals(100, deque.pollFirst());
+    assertNull(deque.pollFirst(0));
+    assertEquals(1, deque.pollFirst());
+    assertEquals(7, deque.size());
+
+    assertThrows(IndexOutOfBoundsException.class, () -> {
+      deque.offerLast(2, 1);
+    });
+    assertThrows(NullPointerException.class, () -> {
+      deque.offerLast(0, null);
+    });
+    assertEquals(7, deque.size());
+    assertEquals(1, deque.firstNonEmptyLane());
+  }
+
+  @Test
+  void testClear() {
+    PriorityLaneDeque<Integer> deque = new PriorityLaneDeque<>(4);
+    deque.offerLast(1, 1);
+    deque.offerLast(3, 3);
+    deque.clear();
+    assertEquals(0, deque.size());
+    assertEquals(0, deque.size(3));
+    assertNull(deque.pollFirst());
+  }
+}
@@ -0,0 +1,149 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Throughput of HybridDeque's binary format and of its Serializable form, against writing every
+ * element through an ObjectOutputStream. Each variant writes the whole deque to a temporary file
+ * and reads it back.
+ *
+ * <p>Usage: java SerializationBenchmark [elements] [rounds]. The defaults are 10,000,000 elements
+ * and 3 rounds, after one warm-up round; the default size wants a heap of about 1 GB.
+ */
+public class SerializationBenchmark {
+
+  private static final ElementCodec<Integer> INT_CODEC = new ElementCodec<Integer>() {
+    @Override
+    public int encodedSize(Integer e) {
+      return Integer.BYTES;
+    }
+
+    @Override
+    public void encode(Integer e, ByteBuffer out) {
+      out.putInt(e);
+    }
+
+    @Override
+    public Integer decode(ByteBuffer in) {
+      return in.getInt();
+    }
+  };
+
+
+  public static void main(String[] args) throws Exception {
+    int elements = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+    int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+    HybridDeque<Integer> deque = new HybridDeque<>();
+    for (int i = 0; i < elements; i++) {
+      deque.offerLast(i);
+    }
+
+    Path file = Files.createTempFile("hybriddeque-bench-", ".bin");
+    try {
+      System.out.printf("%,d elements%n", elements);
+      for (int round = 0; round <= rounds; round++) {
+        String label = round == 0 ? "warm-up" : "round " + round;
+        report(label, "writeTo/readFrom", file, elements, binary(deque, file));
+        report(label, "writeObject", file, elements, serializable(deque, file));
+        report(label, "per-element", file, elements, perElement(deque, file));
+      }
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+
+  /**
+   * Return the write and read times, in nanoseconds, of the binary format.
+   */
+  private static long[] binary(HybridDeque<Integer> deque, Path file) throws IOException {
+    long start = System.nanoTime();
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      deque.writeTo(channel, INT_CODEC);
+    }
+    long written = System.nanoTime();
+    HybridDeque<Integer> copy;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      copy = HybridDeque.readFrom(channel, INT_CODEC);
+    }
+    long read = System.nanoTime();
+    check(deque, copy.size());
+    return new long[] {written - start, read - written};
+  }
+
+
+  @SuppressWarnings("unchecked")
+  private static long[] serializable(HybridDeque<Integer> deque, Path file)
+      throws IOException, ClassNotFoundException {
+    long start = System.nanoTime();
+    try (ObjectOutputStream out = new ObjectOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(file)))) {
+      out.writeObject(deque);
+    }
+    long written = System.nanoTime();
+    HybridDeque<Integer> copy;
+    try (ObjectInputStream in = new ObjectInputStream(
+        new BufferedInputStream(Files.newInputStream(file)))) {
+      copy = (HybridDeque<Integer>) in.readObject();
+    }
+    long read = System.nanoTime();
+    check(deque, copy.size());
+    return new long[] {written - start, read - written};
+  }
+
+
+  /**
+   * The approach the binary format replaces: iterate and write every element with generic
+   * serialization, then offer every element read back.
+   */
+  private static long[] perElement(HybridDeque<Integer> deque, Path file)
+      throws IOException, ClassNotFoundException {
+    long start = System.nanoTime();
+    try (ObjectOutputStream out = new ObjectOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(file)))) {
+      out.writeInt(deque.size());
+      for (Integer e : deque) {
+        out.writeObject(e);
+      }
+    }
+    long written = System.nanoTime();
+    HybridDeque<Integer> copy = new HybridDeque<>();
+    try (ObjectInputStream in = new ObjectInputStream(
+        new BufferedInputStream(Files.newInputStream(file)))) {
+      int size = in.readInt();
+      for (int i = 0; i < size; i++) {
+        copy.offerLast((Integer) in.readObject());
+      }
+    }
+    long read = System.nanoTime();
+    check(deque, copy.size());
+    return new long[] {written - start, read - written};
+  }
+
+
+  private static void check(HybridDeque<Integer> deque, int size) {
+    if (size != deque.size()) {
+      throw new AssertionError("Read " + size + " elements, expected " + deque.size());
+    }
+  }
+
+
+  private static void report(String label, String variant, Path file, int elements, long[] nanos)
+      throws IOException {
+    long bytes = Files.size(file);
+    System.out.printf("%-8s %-17s %,14d bytes  write %7.1f Melem/s %7.1f MB/s"
+        + "  read %7.1f Melem/s %7.1f MB/s%n", label, variant, bytes,
+        elements * 1e3 / nanos[0], bytes * 1e3 / nanos[0],
+        elements * 1e3 / nanos[1], bytes * 1e3 / nanos[1]);
+  }
+
+}
@@ -0,0 +1,97 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A writer thread keeps a deque at a fixed size with offerLast and pollFirst while a monitoring
+ * thread repeatedly iterates over all of it. Every deque call holds a lock. The monitor either
+ * copies the deque under that lock, as before snapshots existed, or takes a snapshot under the
+ * lock and iterates it after releasing the lock.
+ *
+ * <p>Reported are the writer's operations per second, the monitor's full passes per second and
+ * the longest time the writer waited for a single operation.
+ *
+ * <p>Usage: java SnapshotBenchmark [size] [seconds] [rounds]. The defaults are 100,000 elements,
+ * 2 seconds per variant and 3 rounds, after one warm-up round.
+ */
+public class SnapshotBenchmark {
+
+  private static final class Result {
+    private long writes;
+    private long passes;
+    private long longestWriteNanos;
+  }
+
+
+  public static void main(String[] args) throws InterruptedException {
+    int size = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+    double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 2;
+    int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+    System.out.printf("%,d elements%n", size);
+    for (int round = 0; round <= rounds; round++) {
+      String label = round == 0 ? "warm-up" : "round " + round;
+      report(label, "copy under lock", seconds, run(size, seconds, false));
+      report(label, "snapshot", seconds, run(size, seconds, true));
+    }
+  }
+
+
+  private static Result run(int size, double seconds, boolean snapshots)
+      throws InterruptedException {
+    HybridDeque<Integer> deque = new HybridDeque<>();
+    for (int i = 0; i < size; i++) {
+      deque.offerLast(i);
+    }
+    ReentrantLock lock = new ReentrantLock();
+    long deadline = System.nanoTime() + (long) (seconds * 1e9);
+    Result result = new Result();
+
+    Thread monitor = new Thread(() -> {
+      long checksum = 0;
+      while (System.nanoTime() < deadline) {
+        Collection<Integer> view;
+        lock.lock();
+        try {
+          view = snapshots ? deque.snapshot() : new ArrayList<>(deque);
+        } finally {
+          lock.unlock();
+        }
+        for (Integer e : view) {
+          checksum += e;
+        }
+        result.passes++;
+      }
+      if (checksum == 42) {
+        System.out.println();
+      }
+    }, "SnapshotBenchmark-monitor");
+    monitor.start();
+
+    int next = size;
+    while (System.nanoTime() < deadline) {
+      for (int i = 0; i < 1000; i++) {
+        long start = System.nanoTime();
+        lock.lock();
+        try {
+          deque.offerLast(next++);
+          deque.pollFirst();
+        } finally {
+          lock.unlock();
+        }
+        result.longestWriteNanos = Math.max(result.longestWriteNanos, System.nanoTime() - start);
+      }
+      result.writes += 1000;
+    }
+    monitor.join();
+    return result;
+  }
+
+
+  private static void report(String label, String variant, double seconds, Result result) {
+    System.out.printf("%-8s %-16s %7.2f M writes/s  %8.1f passes/s  longest write %7.3f ms%n",
+        label, variant, result.writes / seconds / 1e6, result.passes / seconds,
+        result.longestWriteNanos / 1e6);
+  }
+
+}
@@ -0,0 +1,139 @@
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * HybridDeque.sort against the approach it replaces: copy the deque into an array, sort that with
+ * Arrays.parallelSort, clear the deque and offer every element again. Both start from deques with
+ * the same shuffled contents. Time and the bytes allocated by all threads, including the fork/join
+ * workers, are reported for each, followed by the cost of binarySearch on the sorted deque.
+ *
+ * <p>Allocation is read from the JDK's com.sun.management.ThreadMXBean and reported as unavailable
+ * where that is not supported.
+ *
+ * <p>Usage: java SortBenchmark [elements] [rounds]. The defaults are 5,000,000 elements and 3
+ * rounds, after one warm-up round.
+ */
+public class SortBenchmark {
+
+  private static final int SEARCHES = 1_000_000;
+
+
+  public static void main(String[] args) {
+    int elements = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+    int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+    Comparator<Integer> order = Comparator.naturalOrder();
+
+    System.out.printf("%,d elements, %d processors%n", elements,
+        Runtime.getRuntime().availableProcessors());
+    for (int round = 0; round <= rounds; round++) {
+      String label = round == 0 ? "warm-up" : "round " + round;
+
+      HybridDeque<Integer> deque = shuffled(elements, round);
+      Map<Long, Long> allocated = allocatedBytes();
+      long start = System.nanoTime();
+      deque.sort(order);
+      long nanos = System.nanoTime() - start;
+      report(label, "sort", nanos, allocated);
+      check(deque, order);
+
+      Random random = new Random(round);
+      long found = 0;
+      start = System.nanoTime();
+      for (int i = 0; i < SEARCHES; i++) {
+        found += deque.binarySearch(random.nextInt(elements), order) >= 0 ? 1 : 0;
+      }
+      System.out.printf("%-8s %-22s %8.0f ns per search (%,d found)%n", label, "binarySearch",
+          (System.nanoTime() - start) / (double) SEARCHES, found);
+
+      HybridDeque<Integer> rebuilt = shuffled(elements, round);
+      allocated = allocatedBytes();
+      start = System.nanoTime();
+      rebuild(rebuilt, order);
+      nanos = System.nanoTime() - start;
+      report(label, "parallelSort+rebuild", nanos, allocated);
+      check(rebuilt, order);
+    }
+  }
+
+
+  private static void rebuild(HybridDeque<Integer> deque, Comparator<Integer> order) {
+    Integer[] array = deque.toArray(new Integer[0]);
+    Arrays.parallelSort(array, order);
+    deque.clear();
+    for (Integer e : array) {
+      deque.offerLast(e);
+    }
+  }
+
+
+  /**
+   * Return a deque holding 0 to elements - 1 in an order fixed by the seed.
+   */
+  private static HybridDeque<Integer> shuffled(int elements, long seed) {
+    Integer[] values = new Integer[elements];
+    for (int i = 0; i < elements; i++) {
+      values[i] = i;
+    }
+    Random random = new Random(seed);
+    for (int i = elements - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      Integer swap = values[i];
+      values[i] = values[j];
+      values[j] = swap;
+    }
+    HybridDeque<Integer> deque = new HybridDeque<>();
+    for (Integer e : values) {
+      deque.offerLast(e);
+    }
+    return deque;
+  }
+
+
+  private static void check(HybridDeque<Integer> deque, Comparator<Integer> order) {
+    Integer previous = null;
+    for (Integer e : deque) {
+      if (previous != null && order.compare(previous, e) > 0) {
+        throw new AssertionError("Not sorted at " + e);
+      }
+      previous = e;
+    }
+  }
+
+
+  /**
+   * Return the bytes allocated so far by each live thread, or null if the JVM cannot tell.
+   */
+  private static Map<Long, Long> allocatedBytes() {
+    if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+      return null;
+    }
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long[] ids = threads.getAllThreadIds();
+    long[] bytes = threads.getThreadAllocatedBytes(ids);
+    Map<Long, Long> allocated = new HashMap<>();
+    for (int i = 0; i < ids.length; i++) {
+      allocated.put(ids[i], bytes[i]);
+    }
+    return allocated;
+  }
+
+
+  private static void report(String label, String variant, long nanos, Map<Long, Long> before) {
+    Map<Long, Long> after = allocatedBytes();
+    String allocation = "allocation unavailable";
+    if (before != null && after != null) {
+      long total = 0;
+      for (Map.Entry<Long, Long> entry : after.entrySet()) {
+        total += Math.max(0, entry.getValue() - before.getOrDefault(entry.getKey(), 0L));
+      }
+      allocation = String.format("%,8.1f MB allocated", total / 1e6);
+    }
+    System.out.printf("%-8s %-22s %8.1f ms  %s%n", label, variant, nanos / 1e6, allocation);
+  }
+
+}
@@ -0,0 +1,114 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Sustained FIFO throughput of SpillingDeque with a backlog ten times its memory budget. The
+ * backlog is built first, then every step offers one record and polls one, so the head keeps
+ * reading spilled segments back while the tail keeps spilling new ones. An in-memory HybridDeque
+ * with the same backlog is the reference.
+ *
+ * <p>Records are byte arrays. The memory budget is residentSegments segments of blocksPerSegment
+ * blocks each, not counting the head and tail.
+ *
+ * <p>Usage: java SpillingBenchmark [operations] [recordBytes] [blocksPerSegment]
+ * [residentSegments] [rounds]. The defaults are 5,000,000 operations on 64-byte records, segments
+ * of 256 blocks, 16 resident segments and 3 rounds, after one warm-up round.
+ */
+public class SpillingBenchmark {
+
+  private static final ElementCodec<byte[]> BYTES_CODEC = new ElementCodec<byte[]>() {
+    @Override
+    public int encodedSize(byte[] e) {
+      return Integer.BYTES + e.length;
+    }
+
+    @Override
+    public void encode(byte[] e, ByteBuffer out) {
+      out.putInt(e.length).put(e);
+    }
+
+    @Override
+    public byte[] decode(ByteBuffer in) {
+      byte[] e = new byte[in.getInt()];
+      in.get(e);
+      return e;
+    }
+  };
+
+
+  public static void main(String[] args) throws IOException {
+    int operations = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+    int recordBytes = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+    int blocksPerSegment = args.length > 2 ? Integer.parseInt(args[2]) : 256;
+    int residentSegments = args.length > 3 ? Integer.parseInt(args[3]) : 16;
+    int rounds = args.length > 4 ? Integer.parseInt(args[4]) : 3;
+
+    int budget = blocksPerSegment * HybridDeque.blockSize() * residentSegments;
+    int backlog = 10 * budget;
+    System.out.printf("budget %,d records, backlog %,d records of %d bytes%n", budget, backlog,
+        recordBytes);
+
+    Path directory = Files.createTempDirectory("spill-bench");
+    try {
+      for (int round = 0; round <= rounds; round++) {
+        String label = round == 0 ? "warm-up" : "round " + round;
+        try (SpillingDeque<byte[]> deque = new SpillingDeque<>(directory, BYTES_CODEC,
+            blocksPerSegment, residentSegments)) {
+          for (int i = 0; i < backlog; i++) {
+            deque.offerLast(record(i, recordBytes));
+          }
+          int spilled = deque.spilledSegments();
+          long start = System.nanoTime();
+          for (int i = backlog; i < backlog + operations; i++) {
+            deque.offerLast(record(i, recordBytes));
+            check(deque.pollFirst(), i - backlog);
+          }
+          long elapsed = System.nanoTime() - start;
+          report(label, "SpillingDeque", operations, elapsed,
+              String.format("  %,d of %,d segments spilled", spilled,
+                  backlog / (blocksPerSegment * HybridDeque.blockSize())));
+        }
+
+        HybridDeque<byte[]> deque = new HybridDeque<>();
+        for (int i = 0; i < backlog; i++) {
+          deque.offerLast(record(i, recordBytes));
+        }
+        long start = System.nanoTime();
+        for (int i = backlog; i < backlog + operations; i++) {
+          deque.offerLast(record(i, recordBytes));
+          check(deque.pollFirst(), i - backlog);
+        }
+        report(label, "HybridDeque", operations, System.nanoTime() - start, "");
+      }
+    } finally {
+      Files.delete(directory);
+    }
+  }
+
+
+  /**
+   * Return a record that starts with its sequence number.
+   */
+  private static byte[] record(int sequence, int recordBytes) {
+    byte[] record = new byte[recordBytes];
+    ByteBuffer.wrap(record).putInt(sequence);
+    return record;
+  }
+
+
+  private static void check(byte[] record, int sequence) {
+    if (ByteBuffer.wrap(record).getInt() != sequence) {
+      throw new AssertionError("Records out of order at " + sequence);
+    }
+  }
+
+
+  private static void report(String label, String variant, int operations, long nanos,
+      String extra) {
+    System.out.printf("%-8s %-14s %7.2f M offer+poll/s%s%n", label, variant,
+        operations * 1e3 / nanos, extra);
+  }
+
+}
@@ -0,0 +1,423 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deque for backlogs that can grow past the heap. Both ends are kept on the heap as ordinary
+ * HybridDeques, while the middle is a sequence of fixed-size segments. Once more than a set number
+ * of segments are held in memory, new segments are written to files in a spill directory, and
+ * spilled segments are read back on a background thread shortly before pollFirst reaches them.
+ *
+ * <p>Segments are written with HybridDeque's binary format, so an ElementCodec is required. Files
+ * are deleted as soon as their segment has been read back, and close() deletes any that remain.
+ *
+ * <p>This deque is tuned for FIFO use through offerLast and pollFirst. offerFirst and pollLast work,
+ * but elements added with offerFirst always stay on the heap. Like HybridDeque, this class does not
+ * allow nulls and is not thread-safe. A segment that cannot be written to a file simply stays on
+ * the heap. Methods throw UncheckedIOException if a spilled segment cannot be read back.
+ */
+public class SpillingDeque<E> implements Closeable {
+
+  /** Number of segments after the head that are loaded ahead of time. */
+  private static final int PREFETCH_SEGMENTS = 2;
+
+  private final Path directory;
+  private final ElementCodec<E> codec;
+  private final int segmentSize;
+  private final int residentSegments;
+  private final ExecutorService io;
+
+  private HybridDeque<E> head = new HybridDeque<>();
+  private final HybridDeque<Segment> middle = new HybridDeque<>();
+  private HybridDeque<E> tail = new HybridDeque<>();
+
+  // Spilled segments whose writes have not been checked yet, in the order they were submitted.
+  private final HybridDeque<Segment> writes = new HybridDeque<>();
+
+  // Middle segments that have no file or are being loaded.
+  private int resident;
+  private int size;
+
+
+  /**
+   * A run of elements from the middle of the deque. A segment with no file is on the heap. A
+   * spilled segment keeps its elements until its write is known to have succeeded, so that a failed
+   * write can fall back to them; after that they are only in the file, or being loaded. The segment
+   * fields are only touched by the thread using the deque; the background thread only sees the
+   * values captured by its tasks.
+   */
+  private final class Segment {
+    private HybridDeque<E> elements;
+    private Path file;
+    private Future<?> writing;
+    private Future<HybridDeque<E>> loading;
+
+    private Segment(HybridDeque<E> elements) {
+      this.elements = elements;
+    }
+  }
+
+
+  /**
+   * Create an empty deque.
+   *
+   * @param directory Directory for segment files, which must exist
+   * @param codec Used to write and read spilled elements
+   * @param blocksPerSegment Number of HybridDeque blocks in each middle segment
+   * @param residentSegments Number of middle segments kept on the heap before spilling starts
+   * @throws IllegalArgumentException If blocksPerSegment is less than 1 or residentSegments is
+   *         negative
+   */
+  public SpillingDeque(Path directory, ElementCodec<E> codec, int blocksPerSegment,
+      int residentSegments) {
+    if (blocksPerSegment < 1) {
+      throw new IllegalArgumentException("blocksPerSegment must be at least 1");
+    }
+    if (residentSegments < 0) {
+      throw new IllegalArgumentException("residentSegments must not be negative");
+    }
+    this.directory = directory;
+    this.codec = codec;
+    this.segmentSize = blocksPerSegment * HybridDeque.blockSize();
+    this.residentSegments = residentSegments;
+    this.io = Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "SpillingDeque-io");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+
+  public boolean offerLast(E e) {
+    tail.offerLast(e);
+    size++;
+    if (tail.size() == segmentSize) {
+      Segment segment = new Segment(tail);
+      tail = new HybridDeque<>();
+      middle.offerLast(segment);
+      resident++;
+      if (resident > residentSegments) {
+        spill(segment);
+      }
+    }
+    return true;
+  }
+
+
+  public boolean offerFirst(E e) {
+    head.offerFirst(e);
+    size++;
+    return true;
+  }
+
+
+  public E pollFirst() {
+    if (size == 0) {
+      return null;
+    }
+    if (head.size() == 0) {
+      refillHead();
+    }
+    size--;
+    return head.pollFirst();
+  }
+
+
+  public E pollLast() {
+    if (size == 0) {
+      return null;
+    }
+    if (tail.size() == 0) {
+      refillTail();
+    }
+    size--;
+    return tail.pollLast();
+  }
+
+
+  public E peekFirst() {
+    if (size == 0) {
+      return null;
+    }
+    if (head.size() == 0) {
+      refillHead();
+    }
+    return head.peekFirst();
+  }
+
+
+  public E peekLast() {
+    if (size == 0) {
+      return null;
+    }
+    if (tail.size() == 0) {
+      refillTail();
+    }
+    return tail.peekLast();
+  }
+
+
+  public int size() {
+    return size;
+  }
+
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+
+  /**
+   * Return the number of middle segments currently stored in files.
+   */
+  public int spilledSegments() {
+    int spilled = 0;
+    for (Segment segment : middle) {
+      if (segment.file != null) {
+        spilled++;
+      }
+    }
+    return spilled;
+  }
+
+
+  /**
+   * Wait for every segment write submitted so far, then settle them. Tests use this so that
+   * spilled segments are taken from their files rather than from the heap.
+   */
+  void awaitWrites() {
+    try {
+      io.submit(() -> null).get();
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new UncheckedIOException(new InterruptedIOException("Interrupted awaiting writes"));
+    } catch (ExecutionException ee) {
+      throw new IllegalStateException(ee.getCause());
+    }
+    settleWrites();
+  }
+
+
+  /**
+   * Stop the background thread and delete every remaining segment file. The deque must not be
+   * used afterwards.
+   *
+   * @throws IOException If a segment file cannot be deleted
+   */
+  @Override
+  public void close() throws IOException {
+    io.shutdown();
+    try {
+      io.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+    }
+
+    for (Segment segment : middle) {
+      if (segment.file != null) {
+        Files.deleteIfExists(segment.file);
+      }
+    }
+    middle.clear();
+    writes.clear();
+    head.clear();
+    tail.clear();
+    resident = 0;
+    size = 0;
+  }
+
+
+  /**
+   * Move the next run of elements to the head: the first middle segment if there is one, otherwise
+   * everything in the tail. Then start loading the segments that follow.
+   */
+  private void refillHead() {
+    if (middle.size() == 0) {
+      head = tail;
+      tail = new HybridDeque<>();
+      return;
+    }
+
+    head = take(middle.peekFirst());
+    middle.pollFirst();
+    settleWrites();
+    int ahead = 0;
+    Iterator<Segment> iterator = middle.iterator();
+    while (ahead < PREFETCH_SEGMENTS && iterator.hasNext()) {
+      prefetch(iterator.next());
+      ahead++;
+    }
+  }
+
+
+  /**
+   * Move the last run of elements to the tail: the last middle segment if there is one, otherwise
+   * everything in the head.
+   */
+  private void refillTail() {
+    if (middle.size() == 0) {
+      tail = head;
+      head = new HybridDeque<>();
+      return;
+    }
+    tail = take(middle.peekLast());
+    middle.pollLast();
+  }
+
+
+  /**
+   * Write a segment to a new file in the background. Its elements are dropped from the heap once
+   * the write is known to have succeeded. If the file cannot be created, the segment stays on the
+   * heap.
+   */
+  private void spill(Segment segment) {
+    settleWrites();
+    HybridDeque<E> elements = segment.elements;
+    Path file;
+    try {
+      file = Files.createTempFile(directory, "hybriddeque-", ".seg");
+    } catch (IOException ioe) {
+      return;
+    }
+
+    segment.file = file;
+    resident--;
+    segment.writing = io.submit(() -> {
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE,
+          StandardOpenOption.TRUNCATE_EXISTING)) {
+        elements.writeTo(channel, codec);
+      }
+      return null;
+    });
+    writes.offerLast(segment);
+  }
+
+
+  /**
+   * Settle every write that has finished. The executor runs tasks in order, so writes finish in the
+   * order they were submitted.
+   */
+  private void settleWrites() {
+    while (writes.size() > 0
+        && (writes.peekFirst().writing == null || writes.peekFirst().writing.isDone())) {
+      settle(writes.pollFirst());
+    }
+  }
+
+
+  /**
+   * If a segment's write has finished, drop its elements from the heap when the write succeeded,
+   * or keep them and discard the file when it failed.
+   */
+  private void settle(Segment segment) {
+    if (segment.writing == null || !segment.writing.isDone()) {
+      return;
+    }
+    try {
+      segment.writing.get();
+    } catch (InterruptedException | ExecutionException e) {
+      // get() does not wait for a finished task, so only a failed write gets here.
+      keepOnHeap(segment);
+      return;
+    }
+    segment.writing = null;
+    segment.elements = null;
+  }
+
+
+  /**
+   * Return a spilled segment whose elements are still on the heap to the heap, and delete its file
+   * once the background thread is done with it.
+   */
+  private void keepOnHeap(Segment segment) {
+    if (segment.loading == null) { // A pending load was already counted
+      resident++;
+    }
+    if (segment.writing != null) {
+      segment.writing.cancel(false);
+    }
+    if (segment.loading != null) {
+      segment.loading.cancel(false);
+    }
+    Path file = segment.file;
+    io.submit(() -> Files.deleteIfExists(file));
+    segment.file = null;
+    segment.writing = null;
+    segment.loading = null;
+  }
+
+
+  /**
+   * Start reading a spilled segment back in the background, if that has not already started.
+   */
+  private void prefetch(Segment segment) {
+    settle(segment);
+    if (segment.file == null || segment.loading != null) {
+      return;
+    }
+
+    Path file = segment.file;
+    Future<?> writing = segment.writing;
+    segment.loading = io.submit(() -> {
+      // The executor runs tasks in order, so the write has already finished; get() surfaces its
+      // failure, if any.
+      if (writing != null) {
+        writing.get();
+      }
+      HybridDeque<E> elements;
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+        elements = HybridDeque.readFrom(channel, codec);
+      }
+      Files.delete(file);
+      return elements;
+    });
+    resident++;
+  }
+
+
+  /**
+   * Return a segment's elements, waiting for them to be read back if necessary. The caller removes
+   * the segment from the middle only once this returns, so a failed take leaves the deque as it
+   * was: after an interrupt the load keeps running and a later take collects it, and after a
+   * failed read a later take reads the file again. A segment whose write has failed or not yet
+   * finished is taken from the heap.
+   */
+  private HybridDeque<E> take(Segment segment) {
+    settle(segment);
+    if (segment.elements == null) {
+      prefetch(segment);
+      try {
+        segment.elements = segment.loading.get();
+        segment.file = null;
+        segment.loading = null;
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+        throw new UncheckedIOException(new InterruptedIOException("Interrupted loading segment"));
+      } catch (ExecutionException ee) {
+        segment.loading = null;
+        resident--;
+        Throwable cause = ee.getCause();
+        if (cause instanceof IOException) {
+          throw new UncheckedIOException((IOException) cause);
+        }
+        throw new IllegalStateException(cause);
+      }
+    } else if (segment.file != null) {
+      keepOnHeap(segment);
+    }
+    resident--;
+    return segment.elements;
+  }
+
+}
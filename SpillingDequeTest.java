@@ -0,0 +1,237 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+class SpillingDequeTest {
+
+  private static long fileCount(Path directory) throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.count();
+    }
+  }
+
+  @Test
+  void testFifoThroughSpilledSegments() throws IOException {
+    HybridDeque.setBlockSize(4);
+    Path directory = Files.createTempDirectory("spill");
+    try (SpillingDeque<Integer> deque = new SpillingDeque<>(directory, TestCodecs.INT, 2, 1)) {
+      assertNull(deque.pollFirst());
+      assertThrows(NullPointerException.class, () -> {
+        deque.offerLast(null);
+      });
+
+      for (int i = 0; i < 1000; i++) {
+        deque.offerLast(i);
+      }
+      assertEquals(1000, deque.size());
+      assertTrue(deque.spilledSegments() > 100);
+      assertTrue(fileCount(directory) > 100);
+
+      for (int i = 0; i < 500; i++) {
+        assertEquals(i, deque.pollFirst());
+      }
+      // Keep offering while draining, so the backlog refills behind the head.
+      for (int i = 1000; i < 1200; i++) {
+        deque.offerLast(i);
+      }
+      for (int i = 500; i < 1200; i++) {
+        assertEquals(i, deque.peekFirst());
+        assertEquals(i, deque.pollFirst());
+      }
+      assertNull(deque.pollFirst());
+      assertEquals(0, deque.size());
+      assertEquals(0, fileCount(directory));
+    } finally {
+      Files.delete(directory);
+    }
+  }
+
+  @Test
+  void testBothEnds() throws IOException {
+    HybridDeque.setBlockSize(4);
+    Path directory = Files.createTempDirectory("spill");
+    try (SpillingDeque<Integer> deque = new SpillingDeque<>(directory, TestCodecs.INT, 1, 0)) {
+      for (int i = 0; i < 100; i++) {
+        deque.offerLast(i);
+      }
+      deque.offerFirst(-1);
+
+      assertEquals(99, deque.peekLast());
+      for (int i = 99; i >= 50; i--) {
+        assertEquals(i, deque.pollLast());
+      }
+      assertEquals(-1, deque.pollFirst());
+      for (int i = 0; i < 49; i++) {
+        assertEquals(i, deque.pollFirst());
+      }
+      assertEquals(49, deque.pollLast());
+      assertNull(deque.pollLast());
+      assertTrue(deque.isEmpty());
+    } finally {
+      Files.delete(directory);
+    }
+  }
+
+  /**
+   * Int codec whose decode can be held back or made to fail, to exercise failed segment loads, and
+   * whose encode can be made to fail, to exercise failed segment writes.
+   */
+  private static class FaultyCodec implements ElementCodec<Integer> {
+    private volatile CountDownLatch gate = new CountDownLatch(0);
+    private volatile boolean failing;
+    private volatile boolean failingWrites;
+
+    @Override
+    public int encodedSize(Integer e) {
+      return TestCodecs.INT.encodedSize(e);
+    }
+
+    @Override
+    public void encode(Integer e, ByteBuffer out) {
+      if (failingWrites) {
+        throw new IllegalStateException("Disk full");
+      }
+      TestCodecs.INT.encode(e, out);
+    }
+
+    @Override
+    public Integer decode(ByteBuffer in) {
+      try {
+        gate.await();
+      } catch (InterruptedException ie) {
+        throw new IllegalStateException(ie);
+      }
+      if (failing) {
+        throw new IllegalStateException("Decode failed");
+      }
+      return TestCodecs.INT.decode(in);
+    }
+  }
+
+  @Test
+  void testInterruptedLoadKeepsSegment() throws IOException {
+    HybridDeque.setBlockSize(4);
+    Path directory = Files.createTempDirectory("spill");
+    FaultyCodec codec = new FaultyCodec();
+    try (SpillingDeque<Integer> deque = new SpillingDeque<>(directory, codec, 1, 0)) {
+      for (int i = 0; i < 20; i++) {
+        deque.offerLast(i);
+      }
+      deque.awaitWrites();
+      assertEquals(5, deque.spilledSegments());
+
+      // The load cannot finish before the interrupt is noticed.
+      codec.gate = new CountDownLatch(1);
+      Thread.currentThread().interrupt();
+      assertThrows(UncheckedIOException.class, () -> {
+        deque.pollFirst();
+      });
+      assertTrue(Thread.interrupted());
+      assertEquals(20, deque.size());
+
+      codec.gate.countDown();
+      assertEquals(19, deque.peekLast());
+      assertEquals(19, deque.pollLast());
+      for (int i = 0; i < 19; i++) {
+        assertEquals(i, deque.pollFirst());
+      }
+      assertNull(deque.pollFirst());
+    } finally {
+      Files.delete(directory);
+    }
+  }
+
+  @Test
+  void testFailedLoadIsRetried() throws IOException {
+    HybridDeque.setBlockSize(4);
+    Path directory = Files.createTempDirectory("spill");
+    FaultyCodec codec = new FaultyCodec();
+    try (SpillingDeque<Integer> deque = new SpillingDeque<>(directory, codec, 1, 0)) {
+      for (int i = 0; i < 20; i++) {
+        deque.offerLast(i);
+      }
+      deque.awaitWrites();
+
+      codec.failing = true;
+      assertThrows(IllegalStateException.class, () -> {
+        deque.pollFirst();
+      });
+      assertThrows(IllegalStateException.class, () -> {
+        deque.pollLast();
+      });
+      assertEquals(20, deque.size());
+      assertEquals(5, deque.spilledSegments());
+
+      codec.failing = false;
+      for (int i = 0; i < 20; i++) {
+        assertEquals(i, deque.pollFirst());
+      }
+      assertNull(deque.pollFirst());
+      assertEquals(0, fileCount(directory));
+    } finally {
+      Files.delete(directory);
+    }
+  }
+
+  @Test
+  void testFailedWriteKeepsSegment() throws IOException {
+    HybridDeque.setBlockSize(4);
+    Path directory = Files.createTempDirectory("spill");
+    FaultyCodec codec = new FaultyCodec();
+    try {
+      try (SpillingDeque<Integer> deque = new SpillingDeque<>(directory, codec, 1, 0)) {
+        codec.failingWrites = true;
+        for (int i = 0; i < 20; i++) {
+          deque.offerLast(i);
+        }
+        deque.awaitWrites();
+        assertEquals(0, deque.spilledSegments());
+        assertEquals(20, deque.size());
+        assertEquals(19, deque.pollLast());
+
+        codec.failingWrites = false;
+        for (int i = 20; i < 40; i++) {
+          deque.offerLast(i);
+        }
+        deque.awaitWrites();
+        assertEquals(5, deque.spilledSegments());
+        for (int i = 0; i < 19; i++) {
+          assertEquals(i, deque.pollFirst());
+        }
+        for (int i = 20; i < 40; i++) {
+          assertEquals(i, deque.pollFirst());
+        }
+        assertNull(deque.pollFirst());
+      }
+      assertEquals(0, fileCount(directory));
+    } finally {
+      Files.delete(directory);
+    }
+  }
+
+  @Test
+  void testCloseDeletesFiles() throws IOException {
+    HybridDeque.setBlockSize(4);
+    Path directory = Files.createTempDirectory("spill");
+    SpillingDeque<Integer> deque = new SpillingDeque<>(directory, TestCodecs.INT, 1, 0);
+    for (int i = 0; i < 100; i++) {
+      deque.offerLast(i);
+    }
+    deque.pollFirst();
+    assertTrue(fileCount(directory) > 0);
+
+    deque.close();
+    assertEquals(0, fileCount(directory));
+    assertEquals(0, deque.size());
+    Files.delete(directory);
+  }
+}
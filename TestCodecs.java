@@ -0,0 +1,51 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Element codecs shared by the tests.
+ */
+final class TestCodecs {
+
+  /** Fixed four-byte encoding of Integer elements. */
+  static final ElementCodec<Integer> INT = new ElementCodec<Integer>() {
+    @Override
+    public int encodedSize(Integer e) {
+      return Integer.BYTES;
+    }
+
+    @Override
+    public void encode(Integer e, ByteBuffer out) {
+      out.putInt(e);
+    }
+
+    @Override
+    public Integer decode(ByteBuffer in) {
+      return in.getInt();
+    }
+  };
+
+  /** UTF-8 encoding of String elements, prefixed with its length in bytes. */
+  static final ElementCodec<String> STRING = new ElementCodec<String>() {
+    @Override
+    public int encodedSize(String e) {
+      return Integer.BYTES + e.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    @Override
+    public void encode(String e, ByteBuffer out) {
+      byte[] data = e.getBytes(StandardCharsets.UTF_8);
+      out.putInt(data.length).put(data);
+    }
+
+    @Override
+    public String decode(ByteBuffer in) {
+      byte[] data = new byte[in.getInt()];
+      in.get(data);
+      return new String(data, StandardCharsets.UTF_8);
+    }
+  };
+
+  private TestCodecs() {
+  }
+
+}
@@ -0,0 +1,92 @@
+import java.util.Random;
+
+/**
+ * Expiring timestamped events from TimeIndexedDeque against the peekFirst/pollFirst loop on a
+ * HybridDeque that it replaces. Both deques are filled with the same events in key order and then
+ * expired in steps of a fixed key range until empty. Lookups with findFirstAtOrAfter at random
+ * keys are timed as well.
+ *
+ * <p>Usage: java TimeIndexedBenchmark [events] [expiryStep] [rounds]. The defaults are 10,000,000
+ * events, expiry in steps of 1,000 keys and 3 rounds, after one warm-up round.
+ */
+public class TimeIndexedBenchmark {
+
+  private static final int LOOKUPS = 1_000_000;
+
+
+  public static void main(String[] args) {
+    int events = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+    int step = args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+    int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+    // Several events can share a key, as events arriving in the same millisecond do.
+    Long[] keys = new Long[events];
+    Random random = new Random(1);
+    long key = 0;
+    for (int i = 0; i < events; i++) {
+      key += random.nextInt(3);
+      keys[i] = key;
+    }
+    long lastKey = key;
+
+    System.out.printf("%,d events over %,d keys%n", events, lastKey + 1);
+    for (int round = 0; round <= rounds; round++) {
+      String label = round == 0 ? "warm-up" : "round " + round;
+
+      TimeIndexedDeque<Long> indexed = new TimeIndexedDeque<>(Long::longValue);
+      long start = System.nanoTime();
+      for (Long e : keys) {
+        indexed.offerLast(e);
+      }
+      long offerNanos = System.nanoTime() - start;
+
+      long found = 0;
+      start = System.nanoTime();
+      for (int i = 0; i < LOOKUPS; i++) {
+        Long e = indexed.findFirstAtOrAfter(Math.floorMod(random.nextLong(), lastKey + 1));
+        found += e == null ? 0 : 1;
+      }
+      long lookupNanos = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      long expired = 0;
+      for (long t = step; t <= lastKey + step; t += step) {
+        expired += indexed.expireBefore(t);
+      }
+      long expireNanos = System.nanoTime() - start;
+      check(expired, events, indexed.size());
+
+      HybridDeque<Long> plain = new HybridDeque<>();
+      start = System.nanoTime();
+      for (Long e : keys) {
+        plain.offerLast(e);
+      }
+      long plainOfferNanos = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      expired = 0;
+      for (long t = step; t <= lastKey + step; t += step) {
+        while (!plain.isEmpty() && plain.peekFirst() < t) {
+          plain.pollFirst();
+          expired++;
+        }
+      }
+      long plainExpireNanos = System.nanoTime() - start;
+      check(expired, events, plain.size());
+
+      System.out.printf("%-8s %-16s offer %7.1f ms  expire %7.1f ms  findFirstAtOrAfter"
+          + " %5.0f ns (%,d found)%n", label, "TimeIndexedDeque", offerNanos / 1e6,
+          expireNanos / 1e6, (double) lookupNanos / LOOKUPS, found);
+      System.out.printf("%-8s %-16s offer %7.1f ms  expire %7.1f ms%n", label, "poll loop",
+          plainOfferNanos / 1e6, plainExpireNanos / 1e6);
+    }
+  }
+
+
+  private static void check(long expired, int events, int left) {
+    if (expired != events || left != 0) {
+      throw new AssertionError("Expired " + expired + " of " + events + ", " + left + " left");
+    }
+  }
+
+}
@@ -0,0 +1,337 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * FIFO queue of timestamped elements kept in key order. Elements are appended with offerLast, whose
+ * keys must never decrease, and leave from the front. Storage is a ring of HybridDeque-sized blocks
+ * that records the smallest and largest key of every block, so expiring old elements drops whole
+ * blocks at once and finding the first element at or after a time is a binary search over blocks
+ * followed by one inside a block.
+ *
+ * <p>Optionally, a time-to-live and a clock can be given. Every offer then first expires the
+ * elements older than the clock minus the time-to-live. That check costs a single comparison when
+ * nothing has expired, and expiring whole blocks costs a constant amount per block.
+ *
+ * <p>Like HybridDeque, this class does not allow nulls and is not thread-safe.
+ */
+public class TimeIndexedDeque<E> {
+
+  /*
+   * IMPLEMENTATION NOTES ----------------------------------
+   *
+   * Blocks in use occupy ring positions firstBlock, firstBlock + 1, ... (mod blocks.length), for
+   * blockCount blocks. The first element is at slot firstIndex of the first block, and the element
+   * at position p of the deque is at absolute slot firstIndex + p, counted from the start of the
+   * first block. minKeys and maxKeys are indexed by ring position, and minKeys always holds the key
+   * of the block's first remaining element.
+   *
+   * An empty deque has blockCount == 0 and firstIndex == 0.
+   */
+
+  private static final int INITIAL_BLOCKS = 8;
+
+  private final ToLongFunction<? super E> keyOf;
+  private final long timeToLive;
+  private final LongSupplier clock;
+  private final int blockSize;
+
+  private Object[][] blocks = new Object[INITIAL_BLOCKS][];
+  private long[] minKeys = new long[INITIAL_BLOCKS];
+  private long[] maxKeys = new long[INITIAL_BLOCKS];
+  private int firstBlock;
+  private int blockCount;
+  private int firstIndex;
+  private int size;
+
+
+  /**
+   * Create a deque without automatic expiry.
+   *
+   * @param keyOf Extracts the timestamp key of an element
+   */
+  public TimeIndexedDeque(ToLongFunction<? super E> keyOf) {
+    this(keyOf, 0, null);
+  }
+
+
+  /**
+   * Create a deque that expires old elements on every offer.
+   *
+   * @param keyOf Extracts the timestamp key of an element
+   * @param timeToLive Elements with a key below clock minus timeToLive are expired
+   * @param clock Current time, in the same units as the keys, or null for no automatic expiry
+   * @throws IllegalArgumentException If timeToLive is negative
+   */
+  public TimeIndexedDeque(ToLongFunction<? super E> keyOf, long timeToLive, LongSupplier clock) {
+    if (timeToLive < 0) {
+      throw new IllegalArgumentException("timeToLive must not be negative");
+    }
+    this.keyOf = keyOf;
+    this.timeToLive = timeToLive;
+    this.clock = clock;
+    this.blockSize = HybridDeque.blockSize();
+  }
+
+
+  /**
+   * Append an element, after expiring old elements if a time-to-live was given.
+   *
+   * @param e The element to add
+   * @return true
+   * @throws NullPointerException If e is null
+   * @throws IllegalArgumentException If e's key is smaller than the key of the last element
+   */
+  public boolean offerLast(E e) {
+    if (e == null) {
+      throw new NullPointerException();
+    }
+    long key = keyOf.applyAsLong(e);
+    if (size > 0 && key < maxKeys[ring(blockCount - 1)]) {
+      throw new IllegalArgumentException("Keys must not decrease: " + key);
+    }
+
+    if (clock != null) {
+      long cutoff = clock.getAsLong() - timeToLive;
+      if (size > 0 && minKeys[firstBlock] < cutoff) {
+        removeBefore(cutoff, null);
+      }
+    }
+
+    int slot = (firstIndex + size) % blockSize;
+    if (slot == 0) {
+      if (blockCount == blocks.length) {
+        grow();
+      }
+      int position = ring(blockCount);
+      blocks[position] = new Object[blockSize];
+      minKeys[position] = key;
+      blockCount++;
+    }
+
+    int position = ring(blockCount - 1);
+    blocks[position][slot] = e;
+    maxKeys[position] = key;
+    size++;
+    return true;
+  }
+
+
+  /**
+   * Remove and return the element with the smallest key.
+   *
+   * @return The element, or null if the deque is empty
+   */
+  public E pollFirst() {
+    if (size == 0) {
+      return null;
+    }
+
+    Object[] block = blocks[firstBlock];
+    E e = elementAt(block, firstIndex);
+    block[firstIndex] = null;
+    firstIndex++;
+    size--;
+
+    if (size == 0) {
+      dropFirstBlock();
+      firstIndex = 0;
+    } else if (firstIndex == blockSize) {
+      dropFirstBlock();
+    } else {
+      minKeys[firstBlock] = keyOf.applyAsLong(elementAt(block, firstIndex));
+    }
+    return e;
+  }
+
+
+  public E peekFirst() {
+    return size == 0 ? null : elementAt(blocks[firstBlock], firstIndex);
+  }
+
+
+  public E peekLast() {
+    if (size == 0) {
+      return null;
+    }
+    return elementAt(blocks[ring(blockCount - 1)], (firstIndex + size - 1) % blockSize);
+  }
+
+
+  public int size() {
+    return size;
+  }
+
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+
+  /**
+   * Remove every element whose key is below t. Blocks that lie entirely below t are dropped
+   * without looking at their elements.
+   *
+   * @param t The cutoff key
+   * @return The number of elements removed
+   */
+  public int expireBefore(long t) {
+    return removeBefore(t, null);
+  }
+
+
+  /**
+   * Remove and return, in order, every element whose key is below t. Blocks that lie entirely
+   * below t are copied out in bulk.
+   *
+   * @param t The cutoff key
+   * @return The removed elements
+   */
+  public List<E> headUntil(long t) {
+    List<E> head = new ArrayList<>();
+    removeBefore(t, head);
+    return head;
+  }
+
+
+  /**
+   * Return the first element whose key is t or larger, without removing it. Uses a binary search
+   * over the block maxima followed by a binary search inside one block.
+   *
+   * @param t The key to search for
+   * @return The element, or null if every key is below t
+   */
+  public E findFirstAtOrAfter(long t) {
+    if (size == 0 || maxKeys[ring(blockCount - 1)] < t) {
+      return null;
+    }
+
+    int low = 0;
+    int high = blockCount - 1;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (maxKeys[ring(mid)] < t) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+
+    Object[] block = blocks[ring(low)];
+    return elementAt(block, firstAtOrAfter(block, low == 0 ? firstIndex : 0, endOf(low), t));
+  }
+
+
+  /**
+   * Remove the elements with a key below t, passing them to sink if it is not null.
+   */
+  private int removeBefore(long t, Collection<? super E> sink) {
+    int removed = 0;
+    while (size > 0 && maxKeys[firstBlock] < t) {
+      Object[] block = blocks[firstBlock];
+      int end = endOf(0);
+      if (sink != null) {
+        for (int i = firstIndex; i < end; i++) {
+          sink.add(elementAt(block, i));
+        }
+      }
+      removed += end - firstIndex;
+      size -= end - firstIndex;
+      dropFirstBlock();
+    }
+
+    if (size == 0) {
+      firstIndex = 0;
+      return removed;
+    }
+    if (minKeys[firstBlock] >= t) {
+      return removed;
+    }
+
+    Object[] block = blocks[firstBlock];
+    int stop = firstAtOrAfter(block, firstIndex, endOf(0), t);
+    for (int i = firstIndex; i < stop; i++) {
+      if (sink != null) {
+        sink.add(elementAt(block, i));
+      }
+      block[i] = null;
+    }
+    removed += stop - firstIndex;
+    size -= stop - firstIndex;
+    firstIndex = stop;
+    minKeys[firstBlock] = keyOf.applyAsLong(elementAt(block, firstIndex));
+    return removed;
+  }
+
+
+  /**
+   * Binary search a block's slots [from, to) for the first element with a key of t or larger.
+   */
+  private int firstAtOrAfter(Object[] block, int from, int to, long t) {
+    int low = from;
+    int high = to;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (keyOf.applyAsLong(elementAt(block, mid)) < t) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+
+  /**
+   * Return one past the last used slot of the i-th block in use.
+   */
+  private int endOf(int i) {
+    int end = firstIndex + size - i * blockSize;
+    return Math.min(end, blockSize);
+  }
+
+
+  /**
+   * Forget the first block and start the deque at the beginning of the next one.
+   */
+  private void dropFirstBlock() {
+    blocks[firstBlock] = null;
+    firstBlock = ring(1);
+    blockCount--;
+    firstIndex = 0;
+  }
+
+
+  /**
+   * Double the ring, moving the blocks in use to the start of the new arrays.
+   */
+  private void grow() {
+    int capacity = blocks.length * 2;
+    Object[][] newBlocks = new Object[capacity][];
+    long[] newMinKeys = new long[capacity];
+    long[] newMaxKeys = new long[capacity];
+    for (int i = 0; i < blockCount; i++) {
+      newBlocks[i] = blocks[ring(i)];
+      newMinKeys[i] = minKeys[ring(i)];
+      newMaxKeys[i] = maxKeys[ring(i)];
+    }
+    blocks = newBlocks;
+    minKeys = newMinKeys;
+    maxKeys = newMaxKeys;
+    firstBlock = 0;
+  }
+
+
+  private int ring(int i) {
+    return (firstBlock + i) & (blocks.length - 1);
+  }
+
+
+  @SuppressWarnings("unchecked")
+  private E elementAt(Object[] block, int index) {
+    return (E) block[index];
+  }
+
+}
@@ -0,0 +1,116 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class TimeIndexedDequeTest {
+
+  @Test
+  void testOfferPoll() {
+    HybridDeque.setBlockSize(4);
+    TimeIndexedDeque<Long> deque = new TimeIndexedDeque<>(Long::longValue);
+    assertNull(deque.pollFirst());
+    assertNull(deque.peekLast());
+    assertThrows(NullPointerException.class, () -> {
+      deque.offerLast(null);
+    });
+
+    for (long i = 0; i < 100; i++) {
+      deque.offerLast(i);
+    }
+    assertThrows(IllegalArgumentException.class, () -> {
+      deque.offerLast(98L);
+    });
+    deque.offerLast(99L);
+
+    assertEquals(101, deque.size());
+    assertEquals(0L, deque.peekFirst());
+    assertEquals(99L, deque.peekLast());
+    for (long i = 0; i < 100; i++) {
+      assertEquals(i, deque.pollFirst());
+    }
+    assertEquals(99L, deque.pollFirst());
+    assertTrue(deque.isEmpty());
+
+    deque.offerLast(5L);
+    assertEquals(5L, deque.peekFirst());
+    assertEquals(5L, deque.peekLast());
+  }
+
+  @Test
+  void testExpireBefore() {
+    HybridDeque.setBlockSize(4);
+    TimeIndexedDeque<Long> deque = new TimeIndexedDeque<>(Long::longValue);
+    for (long i = 0; i < 100; i++) {
+      deque.offerLast(i * 10);
+    }
+    deque.pollFirst();
+
+    assertEquals(0, deque.expireBefore(5));
+    assertEquals(42, deque.expireBefore(425));
+    assertEquals(430L, deque.peekFirst());
+    assertEquals(57, deque.size());
+    assertEquals(1, deque.expireBefore(431));
+    assertEquals(56, deque.expireBefore(Long.MAX_VALUE));
+    assertTrue(deque.isEmpty());
+    assertEquals(0, deque.expireBefore(Long.MAX_VALUE));
+  }
+
+  @Test
+  void testHeadUntil() {
+    HybridDeque.setBlockSize(4);
+    TimeIndexedDeque<Long> deque = new TimeIndexedDeque<>(Long::longValue);
+    for (long i = 0; i < 20; i++) {
+      deque.offerLast(i / 2);
+    }
+
+    assertEquals(List.of(0L, 0L, 1L, 1L, 2L, 2L, 3L, 3L, 4L, 4L, 5L, 5L), deque.headUntil(6));
+    assertEquals(8, deque.size());
+    assertEquals(List.of(), deque.headUntil(6));
+    assertEquals(6L, deque.pollFirst());
+  }
+
+  @Test
+  void testFindFirstAtOrAfter() {
+    HybridDeque.setBlockSize(4);
+    TimeIndexedDeque<Long> deque = new TimeIndexedDeque<>(Long::longValue);
+    assertNull(deque.findFirstAtOrAfter(0));
+    for (long i = 0; i < 1000; i++) {
+      deque.offerLast(i * 2);
+    }
+    deque.pollFirst();
+    deque.pollFirst();
+
+    assertEquals(4L, deque.findFirstAtOrAfter(Long.MIN_VALUE));
+    assertEquals(4L, deque.findFirstAtOrAfter(3));
+    assertEquals(1000L, deque.findFirstAtOrAfter(999));
+    assertEquals(1000L, deque.findFirstAtOrAfter(1000));
+    assertEquals(1998L, deque.findFirstAtOrAfter(1998));
+    assertNull(deque.findFirstAtOrAfter(1999));
+    assertEquals(998, deque.size());
+  }
+
+  @Test
+  void testExpiryOnOffer() {
+    HybridDeque.setBlockSize(4);
+    long[] now = new long[1];
+    TimeIndexedDeque<Long> deque = new TimeIndexedDeque<>(Long::longValue, 10, () -> now[0]);
+    assertThrows(IllegalArgumentException.class, () -> {
+      new TimeIndexedDeque<Long>(Long::longValue, -1, () -> 0);
+    });
+
+    for (long t = 0; t < 100; t++) {
+      now[0] = t;
+      deque.offerLast(t);
+      assertEquals(Math.max(0, t - 10), deque.peekFirst());
+    }
+    assertEquals(11, deque.size());
+
+    now[0] = 1000;
+    deque.offerLast(1000L);
+    assertEquals(1, deque.size());
+    assertEquals(1000L, deque.peekFirst());
+  }
+}
@@ -0,0 +1,277 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Recursive Fibonacci, split into tasks down to a sequential threshold, run on a small executor
+ * whose workers each own a WorkStealingDeque and on ForkJoinPool. Both executors run the same
+ * spawn-only tasks, which fork their children and count completions instead of joining. The
+ * usual join-based RecursiveTask on ForkJoinPool is included for reference.
+ *
+ * <p>Usage: java WorkStealingBenchmark [n] [threshold] [workers] [rounds]. The defaults are
+ * fib(38) split down to fib(10), one worker per processor and 3 rounds, after one warm-up round.
+ */
+public class WorkStealingBenchmark {
+
+  /**
+   * Computes fib(n) sequentially, which is the work done by every leaf task.
+   */
+  private static long fib(int n) {
+    return n < 2 ? n : fib(n - 1) + fib(n - 2);
+  }
+
+
+  /**
+   * Counts outstanding tasks and adds up the leaf results of one spawn-only run.
+   */
+  private static final class Run {
+    private final int threshold;
+    private final AtomicLong pending = new AtomicLong(1);
+    private final LongAdder sum = new LongAdder();
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    private Run(int threshold) {
+      this.threshold = threshold;
+    }
+
+    /**
+     * Account for a finished task, after any children it spawned were counted.
+     */
+    private void finished() {
+      if (pending.decrementAndGet() == 0) {
+        done.countDown();
+      }
+    }
+  }
+
+
+  /**
+   * A task of the small executor.
+   */
+  private interface Task {
+    void run(Worker worker);
+  }
+
+
+  private static final class FibTask implements Task {
+    private final Run run;
+    private final int n;
+
+    private FibTask(Run run, int n) {
+      this.run = run;
+      this.n = n;
+    }
+
+    @Override
+    public void run(Worker worker) {
+      if (n <= run.threshold) {
+        run.sum.add(fib(n));
+      } else {
+        run.pending.addAndGet(2);
+        worker.push(new FibTask(run, n - 2));
+        worker.push(new FibTask(run, n - 1));
+      }
+      run.finished();
+    }
+  }
+
+
+  /**
+   * Executor with one WorkStealingDeque per worker. An idle worker steals a batch from the first
+   * non-empty deque it finds, starting at a random victim, and parks briefly when there is none.
+   */
+  private static final class SmallExecutor {
+    private final List<Worker> workers = new ArrayList<>();
+    private final ConcurrentLinkedQueue<Task> submissions = new ConcurrentLinkedQueue<>();
+    private volatile boolean shutdown;
+
+    private SmallExecutor(int threads) {
+      for (int i = 0; i < threads; i++) {
+        workers.add(new Worker(this));
+      }
+      for (Worker worker : workers) {
+        worker.thread.start();
+      }
+    }
+
+    private void submit(Task task) {
+      submissions.offer(task);
+      for (Worker worker : workers) {
+        LockSupport.unpark(worker.thread);
+      }
+    }
+
+    private void shutdown() throws InterruptedException {
+      shutdown = true;
+      for (Worker worker : workers) {
+        LockSupport.unpark(worker.thread);
+        worker.thread.join();
+      }
+    }
+  }
+
+
+  private static final class Worker implements Runnable {
+    private final SmallExecutor executor;
+    private final WorkStealingDeque<Task> tasks = new WorkStealingDeque<>();
+    private final List<Task> stolen = new ArrayList<>();
+    private final Thread thread = new Thread(this, "WorkStealingBenchmark-worker");
+
+    private Worker(SmallExecutor executor) {
+      this.executor = executor;
+      thread.setDaemon(true);
+    }
+
+    private void push(Task task) {
+      tasks.offerLast(task);
+      for (Worker worker : executor.workers) {
+        if (worker != this && worker.tasks.isEmpty()) {
+          LockSupport.unpark(worker.thread);
+          break;
+        }
+      }
+    }
+
+    @Override
+    public void run() {
+      while (!executor.shutdown) {
+        Task task = tasks.pollLast();
+        if (task == null) {
+          task = executor.submissions.poll();
+        }
+        if (task == null) {
+          task = steal();
+        }
+        if (task == null) {
+          LockSupport.parkNanos(100_000);
+          continue;
+        }
+        task.run(this);
+      }
+    }
+
+    /**
+     * Take a batch from another worker, run its oldest task now and keep the rest.
+     */
+    private Task steal() {
+      List<Worker> workers = executor.workers;
+      int start = ThreadLocalRandom.current().nextInt(workers.size());
+      for (int i = 0; i < workers.size(); i++) {
+        Worker victim = workers.get((start + i) % workers.size());
+        if (victim != this && victim.tasks.pollFirstBatch(stolen) > 0) {
+          for (int j = stolen.size() - 1; j > 0; j--) {
+            tasks.offerLast(stolen.get(j));
+          }
+          Task first = stolen.get(0);
+          stolen.clear();
+          return first;
+        }
+      }
+      return null;
+    }
+  }
+
+
+  /**
+   * The same spawn-only task on ForkJoinPool, where fork() pushes onto the worker's own queue.
+   */
+  @SuppressWarnings("serial")
+  private static final class FibAction extends RecursiveAction {
+    private final Run run;
+    private final int n;
+
+    private FibAction(Run run, int n) {
+      this.run = run;
+      this.n = n;
+    }
+
+    @Override
+    protected void compute() {
+      if (n <= run.threshold) {
+        run.sum.add(fib(n));
+      } else {
+        run.pending.addAndGet(2);
+        new FibAction(run, n - 2).fork();
+        new FibAction(run, n - 1).fork();
+      }
+      run.finished();
+    }
+  }
+
+
+  @SuppressWarnings("serial")
+  private static final class FibJoin extends RecursiveTask<Long> {
+    private final int n;
+    private final int threshold;
+
+    private FibJoin(int n, int threshold) {
+      this.n = n;
+      this.threshold = threshold;
+    }
+
+    @Override
+    protected Long compute() {
+      if (n <= threshold) {
+        return fib(n);
+      }
+      FibJoin left = new FibJoin(n - 2, threshold);
+      left.fork();
+      return new FibJoin(n - 1, threshold).compute() + left.join();
+    }
+  }
+
+
+  public static void main(String[] args) throws InterruptedException {
+    int n = args.length > 0 ? Integer.parseInt(args[0]) : 38;
+    int threshold = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+    int threads = args.length > 2 ? Integer.parseInt(args[2])
+        : Runtime.getRuntime().availableProcessors();
+    int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+
+    long expected = fib(n);
+    System.out.printf("fib(%d) down to fib(%d), %d workers%n", n, threshold, threads);
+    SmallExecutor executor = new SmallExecutor(threads);
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      for (int round = 0; round <= rounds; round++) {
+        String label = round == 0 ? "warm-up" : "round " + round;
+
+        Run run = new Run(threshold);
+        long start = System.nanoTime();
+        executor.submit(new FibTask(run, n));
+        run.done.await();
+        report(label, "WorkStealingDeque", System.nanoTime() - start, run.sum.sum(), expected);
+
+        run = new Run(threshold);
+        start = System.nanoTime();
+        pool.execute(new FibAction(run, n));
+        run.done.await();
+        report(label, "ForkJoinPool", System.nanoTime() - start, run.sum.sum(), expected);
+
+        start = System.nanoTime();
+        long sum = pool.invoke(new FibJoin(n, threshold));
+        report(label, "ForkJoinPool join", System.nanoTime() - start, sum, expected);
+      }
+    } finally {
+      executor.shutdown();
+      pool.shutdown();
+    }
+  }
+
+
+  private static void report(String label, String variant, long nanos, long sum, long expected) {
+    if (sum != expected) {
+      throw new AssertionError(variant + " computed " + sum + ", expected " + expected);
+    }
+    System.out.printf("%-8s %-18s %8.1f ms%n", label, variant, nanos / 1e6);
+  }
+
+}
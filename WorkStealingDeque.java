@@ -0,0 +1,263 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Chase-Lev style work-stealing deque for per-worker task queues. A single owner thread pushes and
+ * pops at the last end with offerLast and pollLast, while any number of thief threads take from
+ * the first end with pollFirst or pollFirstBatch. No operation blocks or takes a lock, and the
+ * owner only needs a compare-and-set when the deque is nearly empty.
+ *
+ * <p>Elements are stored in HybridDeque-sized blocks reached through a small ring of block
+ * references. Growing the deque only copies block references, never elements.
+ *
+ * <p>offerLast and pollLast must only ever be called by the owner thread. This deque does not allow
+ * null elements.
+ */
+public class WorkStealingDeque<E> {
+
+  /*
+   * IMPLEMENTATION NOTES ----------------------------------
+   *
+   * Elements live at logical indices top <= i < bottom. Index i is stored at
+   * blocks[(i / blockSize) % blocks.length][i % blockSize]. Both indices only ever grow, except
+   * that the owner temporarily moves bottom back by one while popping.
+   *
+   * top is held in an immutable Top object so that every change of top, including a change that
+   * keeps the same index, is visible to a compare-and-set. Thieves read top, then bottom, then the
+   * block ring, and claim a range of up to maxSteal elements by replacing the Top they read.
+   *
+   * The owner pops by first publishing the smaller bottom and then reading top. If at least
+   * maxSteal elements lie between top and the popped index, no thief that read the same Top can
+   * reach the popped index, and the owner takes it without synchronizing. Otherwise the owner
+   * replaces top with a fresh Top object, which fails every thief that might still be working from
+   * the old bottom.
+   *
+   * The ring grows before live elements could span more than blocks.length - 1 full blocks, so
+   * every live logical block maps to its own physical block and growth can move block references
+   * without splitting any block.
+   *
+   * A thief clears the slots it claimed once its compare-and-set has succeeded, so stolen elements
+   * do not stay reachable until the owner wraps onto their slots. By then the owner may already be
+   * reusing a slot, so each slot is cleared only if it still holds the stolen reference, as
+   * ForkJoinPool's queues do.
+   */
+
+  private static final VarHandle SLOT = MethodHandles.arrayElementVarHandle(Object[].class);
+
+  private static final int INITIAL_BLOCKS = 4;
+
+  private final int blockSize;
+  private final int maxSteal;
+
+  private volatile Object[][] blocks;
+  private volatile long bottom;
+  private final AtomicReference<Top> top = new AtomicReference<>(new Top(0));
+
+
+  /**
+   * Immutable holder for the index of the first element.
+   */
+  private static final class Top {
+    private final long index;
+
+    private Top(long index) {
+      this.index = index;
+    }
+  }
+
+
+  /**
+   * Create an empty deque using the current HybridDeque block size. A batch steal takes at most
+   * half a block.
+   */
+  public WorkStealingDeque() {
+    blockSize = HybridDeque.blockSize();
+    maxSteal = Math.max(1, blockSize / 2);
+    blocks = new Object[INITIAL_BLOCKS][blockSize];
+  }
+
+
+  /**
+   * Push an element onto the last end. Owner thread only.
+   *
+   * @param e The element to add
+   * @return true
+   * @throws NullPointerException If e is null
+   */
+  public boolean offerLast(E e) {
+    if (e == null) {
+      throw new NullPointerException();
+    }
+
+    long b = bottom;
+    long t = top.get().index;
+    Object[][] a = blocks;
+    if (b - t >= (long) (a.length - 1) * blockSize) {
+      a = grow(a, t, b);
+    }
+
+    a[blockOf(a, b)][slotOf(b)] = e;
+    bottom = b + 1;
+    return true;
+  }
+
+
+  /**
+   * Pop the most recently pushed element. Owner thread only.
+   *
+   * @return The element, or null if the deque is empty
+   */
+  public E pollLast() {
+    long b = bottom - 1;
+    Object[][] a = blocks;
+    bottom = b;
+
+    while (true) {
+      Top t = top.get();
+      if (t.index > b) { // Thieves emptied the deque
+        bottom = b + 1;
+        return null;
+      }
+
+      E e = elementAt(a, b);
+      if (b - t.index >= maxSteal) {
+        a[blockOf(a, b)][slotOf(b)] = null;
+        return e;
+      }
+
+      // A thief working from the old bottom may be claiming index b, so invalidate its Top.
+      boolean last = t.index == b;
+      if (top.compareAndSet(t, new Top(last ? b + 1 : t.index))) {
+        a[blockOf(a, b)][slotOf(b)] = null;
+        if (last) {
+          bottom = b + 1;
+        }
+        return e;
+      }
+    }
+  }
+
+
+  /**
+   * Steal the oldest element. Safe to call from any thread.
+   *
+   * @return The element, or null if the deque is empty
+   */
+  public E pollFirst() {
+    while (true) {
+      Top t = top.get();
+      long b = bottom;
+      if (t.index >= b) {
+        return null;
+      }
+
+      Object[][] a = blocks;
+      E e = elementAt(a, t.index);
+      if (top.compareAndSet(t, new Top(t.index + 1))) {
+        clear(a, t.index, e);
+        return e;
+      }
+    }
+  }
+
+
+  /**
+   * Steal about half of the available elements, oldest first, but never more than half a block,
+   * with a single compare-and-set. Safe to call from any thread.
+   *
+   * @param target Receives the stolen elements in order
+   * @return The number of elements stolen, or 0 if the deque is empty
+   */
+  public int pollFirstBatch(Collection<? super E> target) {
+    while (true) {
+      Top t = top.get();
+      long b = bottom;
+      long available = b - t.index;
+      if (available <= 0) {
+        return 0;
+      }
+
+      int count = (int) Math.min(maxSteal, (available + 1) / 2);
+      Object[][] a = blocks;
+      Object[] stolen = new Object[count];
+      for (int i = 0; i < count; i++) {
+        stolen[i] = elementAt(a, t.index + i);
+      }
+
+      if (top.compareAndSet(t, new Top(t.index + count))) {
+        for (int i = 0; i < count; i++) {
+          clear(a, t.index + i, stolen[i]);
+        }
+        for (int i = 0; i < count; i++) {
+          @SuppressWarnings("unchecked")
+          E e = (E) stolen[i];
+          target.add(e);
+        }
+        return count;
+      }
+    }
+  }
+
+
+  /**
+   * Return an estimate of the number of elements. The result is exact when no other thread is
+   * modifying the deque.
+   */
+  public int size() {
+    long n = bottom - top.get().index;
+    return (int) Math.max(0, Math.min(n, Integer.MAX_VALUE));
+  }
+
+
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+
+  /**
+   * Double the block ring, keeping every live block at the position its logical index now maps to.
+   */
+  private Object[][] grow(Object[][] old, long t, long b) {
+    Object[][] a = new Object[old.length * 2][];
+    long firstBlock = t / blockSize;
+    long lastBlock = b / blockSize;
+    for (long k = firstBlock; k <= lastBlock; k++) {
+      a[(int) (k % a.length)] = old[(int) (k % old.length)];
+    }
+    for (int i = 0; i < a.length; i++) {
+      if (a[i] == null) {
+        a[i] = new Object[blockSize];
+      }
+    }
+    blocks = a;
+    return a;
+  }
+
+
+  /**
+   * Clear the slot of a claimed index, unless the owner has already stored a different element
+   * there.
+   */
+  private void clear(Object[][] a, long index, Object claimed) {
+    SLOT.compareAndSet(a[blockOf(a, index)], slotOf(index), claimed, null);
+  }
+
+
+  @SuppressWarnings("unchecked")
+  private E elementAt(Object[][] a, long index) {
+    return (E) a[blockOf(a, index)][slotOf(index)];
+  }
+
+
+  private int blockOf(Object[][] a, long index) {
+    return (int) ((index / blockSize) % a.length);
+  }
+
+
+  private int slotOf(long index) {
+    return (int) (index % blockSize);
+  }
+
+}
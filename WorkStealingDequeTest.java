@@ -0,0 +1,168 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import org.junit.jupiter.api.Test;
+
+class WorkStealingDequeTest {
+
+  @Test
+  void testOwnerIsLifo() {
+    HybridDeque.setBlockSize(4);
+    WorkStealingDeque<Integer> deque = new WorkStealingDeque<>();
+    assertNull(deque.pollLast());
+    assertThrows(NullPointerException.class, () -> {
+      deque.offerLast(null);
+    });
+
+    for (int i = 0; i < 100; i++) {
+      deque.offerLast(i);
+    }
+    assertEquals(100, deque.size());
+    for (int i = 99; i >= 0; i--) {
+      assertEquals(i, deque.pollLast());
+    }
+    assertNull(deque.pollLast());
+    assertEquals(0, deque.size());
+  }
+
+  @Test
+  void testStealIsFifo() {
+    HybridDeque.setBlockSize(4);
+    WorkStealingDeque<Integer> deque = new WorkStealingDeque<>();
+    assertNull(deque.pollFirst());
+    for (int i = 0; i < 50; i++) {
+      deque.offerLast(i);
+    }
+    for (int i = 0; i < 25; i++) {
+      assertEquals(i, deque.pollFirst());
+    }
+    assertEquals(49, deque.pollLast());
+
+    // Keep pushing after steals so the ring wraps and grows with a non-zero top.
+    for (int i = 50; i < 200; i++) {
+      deque.offerLast(i);
+    }
+    for (int i = 25; i < 49; i++) {
+      assertEquals(i, deque.pollFirst());
+    }
+    for (int i = 50; i < 200; i++) {
+      assertEquals(i, deque.pollFirst());
+    }
+    assertNull(deque.pollFirst());
+    assertTrue(deque.isEmpty());
+  }
+
+  @Test
+  void testPollFirstBatch() {
+    HybridDeque.setBlockSize(8);
+    WorkStealingDeque<Integer> deque = new WorkStealingDeque<>();
+    List<Integer> stolen = new ArrayList<>();
+    assertEquals(0, deque.pollFirstBatch(stolen));
+
+    for (int i = 0; i < 20; i++) {
+      deque.offerLast(i);
+    }
+    // Never more than half a block.
+    assertEquals(4, deque.pollFirstBatch(stolen));
+    assertEquals(List.of(0, 1, 2, 3), stolen);
+
+    while (deque.size() > 3) {
+      deque.pollLast();
+    }
+    stolen.clear();
+    // About half of what is left.
+    assertEquals(2, deque.pollFirstBatch(stolen));
+    assertEquals(List.of(4, 5), stolen);
+    assertEquals(6, deque.pollLast());
+    assertNull(deque.pollLast());
+  }
+
+  @Test
+  void testStolenElementsAreReleased() {
+    HybridDeque.setBlockSize(8);
+    WorkStealingDeque<Object> deque = new WorkStealingDeque<>();
+    List<WeakReference<Object>> refs = new ArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      Object task = new Object();
+      refs.add(new WeakReference<>(task));
+      deque.offerLast(task);
+    }
+    deque.offerLast("kept");
+
+    assertTrue(deque.pollFirst() != null);
+    assertTrue(deque.pollFirst() != null);
+    assertEquals(3, deque.pollFirstBatch(new ArrayList<>()));
+    assertTrue(deque.pollFirst() != null);
+    System.gc();
+    for (WeakReference<Object> ref : refs) {
+      assertNull(ref.get());
+    }
+    assertEquals("kept", deque.pollLast());
+  }
+
+  @Test
+  void testConcurrentStealing() throws InterruptedException {
+    HybridDeque.setBlockSize(4);
+    int count = 200_000;
+    WorkStealingDeque<Integer> deque = new WorkStealingDeque<>();
+    AtomicIntegerArray taken = new AtomicIntegerArray(count);
+    Thread[] thieves = new Thread[3];
+    boolean[] done = new boolean[1];
+
+    for (int i = 0; i < thieves.length; i++) {
+      boolean batch = i % 2 == 0;
+      thieves[i] = new Thread(() -> {
+        List<Integer> stolen = new ArrayList<>();
+        while (true) {
+          stolen.clear();
+          if (batch) {
+            deque.pollFirstBatch(stolen);
+          } else {
+            Integer e = deque.pollFirst();
+            if (e != null) {
+              stolen.add(e);
+            }
+          }
+          for (int e : stolen) {
+            taken.incrementAndGet(e);
+          }
+          synchronized (done) {
+            if (done[0] && deque.isEmpty()) {
+              return;
+            }
+          }
+        }
+      });
+      thieves[i].start();
+    }
+
+    for (int i = 0; i < count; i++) {
+      deque.offerLast(i);
+      if (i % 3 == 0) {
+        Integer e = deque.pollLast();
+        if (e != null) {
+          taken.incrementAndGet(e);
+        }
+      }
+    }
+    Integer e;
+    while ((e = deque.pollLast()) != null) {
+      taken.incrementAndGet(e);
+    }
+    synchronized (done) {
+      done[0] = true;
+    }
+    for (Thread thief : thieves) {
+      thief.join();
+    }
+
+    for (int i = 0; i < count; i++) {
+      assertEquals(1, taken.get(i));
+    }
+  }
+}